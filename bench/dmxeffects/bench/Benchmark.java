@@ -0,0 +1,78 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.bench;
+
+/**
+ * A single operation to be measured by the BenchmarkRunner. Each benchmark is
+ * set up once, then its operation is called repeatedly, first to warm up and
+ * then while being measured.
+ * 
+ * Operations should keep any state they need in preallocated fields, so that
+ * the allocation reported is that of the code being measured.
+ * 
+ * @author chris
+ */
+public abstract class Benchmark {
+
+    private final transient String name;
+
+    /**
+     * Creates a new instance of Benchmark
+     * 
+     * @param name
+     *                The name reported for this benchmark.
+     */
+    protected Benchmark(final String name) {
+	super();
+	this.name = name;
+    }
+
+    /**
+     * Get the name of this benchmark.
+     * 
+     * @return The name reported for this benchmark.
+     */
+    public String getName() {
+	return name;
+    }
+
+    /**
+     * Prepare for the operation to be called. By default this does nothing.
+     * 
+     * @throws Exception
+     *                 Any failure, which abandons the benchmark.
+     */
+    public void setUp() throws Exception {
+    }
+
+    /**
+     * Perform the operation being measured once.
+     * 
+     * @throws Exception
+     *                 Any failure, which abandons the benchmark.
+     */
+    public abstract void operation() throws Exception;
+
+    /**
+     * Release anything acquired by setUp. By default this does nothing.
+     */
+    public void tearDown() {
+    }
+}
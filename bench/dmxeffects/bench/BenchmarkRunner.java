@@ -0,0 +1,278 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.bench;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the benchmarks of the DMX hot paths and reports, for each:
+ * <ul>
+ * <li>Throughput, in operations per second.</li>
+ * <li>Average, median and tail latency, from timing individual operations.
+ * These include the cost of reading the clock, which is reported first.</li>
+ * <li>Allocation, in bytes per operation across every thread, and the number
+ * of garbage collections during measurement.</li>
+ * </ul>
+ * 
+ * Usage: BenchmarkRunner [-w warmupSeconds] [-t iterationSeconds]
+ * [-i iterations] [name...]. Only benchmarks whose names start with one of
+ * the names given are run. The benchmarks are built to bin-bench, apart from
+ * the application in bin, so both must be on the classpath to run them.
+ * 
+ * @author chris
+ */
+public final class BenchmarkRunner {
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    // Operations between checks of the clock while measuring throughput
+    private static final int BATCH = 1024;
+
+    private static final int LATENCY_SAMPLES = 200000;
+
+    // Fewest samples taken of slow operations, which take fewer
+    private static final int MIN_LATENCY_SAMPLES = 1000;
+
+    private final transient long warmupNanos;
+
+    private final transient long iterationNanos;
+
+    private final transient int iterations;
+
+    private final transient long[] samples = new long[LATENCY_SAMPLES];
+
+    private transient int sampleCount = LATENCY_SAMPLES;
+
+    private final transient ThreadMXBean threads = ManagementFactory
+	    .getThreadMXBean();
+
+    /**
+     * Creates a new instance of BenchmarkRunner
+     * 
+     * @param warmupSeconds
+     *                Time to run each benchmark before measuring it.
+     * @param iterationSeconds
+     *                Time of each throughput measurement.
+     * @param iterations
+     *                Number of throughput measurements to average.
+     */
+    public BenchmarkRunner(final double warmupSeconds,
+	    final double iterationSeconds, final int iterations) {
+	super();
+	warmupNanos = (long) (warmupSeconds * NANOS_PER_SECOND);
+	iterationNanos = (long) (iterationSeconds * NANOS_PER_SECOND);
+	this.iterations = iterations;
+    }
+
+    /**
+     * Get every benchmark of the DMX hot paths.
+     * 
+     * @return New instances of each benchmark.
+     */
+    public static Benchmark[] getBenchmarks() {
+	return new Benchmark[] { new InputQueueBenchmark(),
+		new UniverseSetValueBenchmark(),
+		new UniverseGetValueBenchmark(),
+		new UniverseListenerBenchmark(), new ControlChannelBenchmark(),
+		new ValidatorBenchmark(), new PipelineBenchmark(),
+		new EffectsEngineBenchmark(), new CrossfadeEngineBenchmark(),
+		new CueListBenchmark() };
+    }
+
+    /**
+     * Main method, running the benchmarks selected on the command line.
+     * 
+     * @param args
+     *                Options and benchmark names, as described above.
+     */
+    public static void main(final String[] args) {
+	double warmup = 2;
+	double time = 1;
+	int iterations = 5;
+	final List<String> names = new java.util.ArrayList<String>();
+	for (int i = 0; i < args.length; i++) {
+	    if ("-w".equals(args[i]) && (i + 1 < args.length)) {
+		warmup = Double.parseDouble(args[++i]);
+	    } else if ("-t".equals(args[i]) && (i + 1 < args.length)) {
+		time = Double.parseDouble(args[++i]);
+	    } else if ("-i".equals(args[i]) && (i + 1 < args.length)) {
+		iterations = Integer.parseInt(args[++i]);
+	    } else {
+		names.add(args[i]);
+	    }
+	}
+	final BenchmarkRunner runner = new BenchmarkRunner(warmup, time,
+		iterations);
+	System.out.println("Clock overhead: " + runner.measureClock()
+		+ " ns");
+	System.out.println(String.format("%-30s %14s %9s %9s %9s %9s %9s %9s %5s",
+		"Benchmark", "ops/s", "avg ns", "p50 ns", "p99 ns", "p99.9 ns",
+		"max ns", "B/op", "GCs"));
+	final Benchmark[] benchmarks = getBenchmarks();
+	for (int b = 0; b < benchmarks.length; b++) {
+	    if (isSelected(benchmarks[b].getName(), names)) {
+		runner.run(benchmarks[b]);
+	    }
+	}
+	// The pipeline leaves listener threads behind
+	System.exit(0);
+    }
+
+    private static boolean isSelected(final String name,
+	    final List<String> names) {
+	if (names.isEmpty()) {
+	    return true;
+	}
+	for (int i = 0; i < names.size(); i++) {
+	    if (name.startsWith(names.get(i))) {
+		return true;
+	    }
+	}
+	return false;
+    }
+
+    /**
+     * Measure and print the results of a single benchmark.
+     * 
+     * @param benchmark
+     *                The benchmark to run.
+     */
+    public void run(final Benchmark benchmark) {
+	try {
+	    benchmark.setUp();
+	    runFor(benchmark, warmupNanos);
+
+	    // Throughput and allocation
+	    final long gcBefore = collectionCount();
+	    final long allocatedBefore = allocatedBytes();
+	    long operations = 0;
+	    long elapsed = 0;
+	    for (int i = 0; i < iterations; i++) {
+		final long start = System.nanoTime();
+		operations += runFor(benchmark, iterationNanos);
+		elapsed += System.nanoTime() - start;
+	    }
+	    final long allocated = allocatedBytes() - allocatedBefore;
+	    final long collections = collectionCount() - gcBefore;
+	    final double throughput = (double) operations * NANOS_PER_SECOND
+		    / elapsed;
+
+	    // Latency of individual operations, for about one iteration
+	    sampleCount = (int) Math.max(MIN_LATENCY_SAMPLES, Math.min(
+		    LATENCY_SAMPLES, operations / iterations));
+	    long total = 0;
+	    for (int i = 0; i < sampleCount; i++) {
+		final long start = System.nanoTime();
+		benchmark.operation();
+		samples[i] = System.nanoTime() - start;
+		total += samples[i];
+	    }
+	    Arrays.sort(samples, 0, sampleCount);
+
+	    System.out.println(String.format(
+		    "%-30s %14.0f %9.1f %9d %9d %9d %9d %9s %5d", benchmark
+			    .getName(), throughput, (double) total
+			    / sampleCount, percentile(0.5),
+		    percentile(0.99), percentile(0.999),
+		    samples[sampleCount - 1],
+		    (allocated < 0) ? "n/a" : String.format("%.1f",
+			    (double) allocated / operations), collections));
+	} catch (Exception e) {
+	    System.err.println(benchmark.getName() + " failed: "
+		    + e.getMessage());
+	    e.printStackTrace(System.err);
+	} finally {
+	    benchmark.tearDown();
+	}
+    }
+
+    /**
+     * Call the operation repeatedly for at least the given time.
+     * 
+     * @return The number of operations performed.
+     */
+    private long runFor(final Benchmark benchmark, final long nanos)
+	    throws Exception {
+	final long end = System.nanoTime() + nanos;
+	long operations = 0;
+	do {
+	    for (int i = 0; i < BATCH; i++) {
+		benchmark.operation();
+	    }
+	    operations += BATCH;
+	} while (System.nanoTime() < end);
+	return operations;
+    }
+
+    private long percentile(final double fraction) {
+	return samples[(int) (fraction * (sampleCount - 1))];
+    }
+
+    /**
+     * Measure the median cost of reading the clock, which is included in
+     * every latency reported.
+     */
+    private long measureClock() {
+	for (int i = 0; i < LATENCY_SAMPLES; i++) {
+	    final long start = System.nanoTime();
+	    samples[i] = System.nanoTime() - start;
+	}
+	Arrays.sort(samples);
+	return percentile(0.5);
+    }
+
+    /**
+     * Get the total bytes allocated by every live thread, or -1 if the JVM
+     * cannot report this.
+     */
+    private long allocatedBytes() {
+	if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+	    return -1;
+	}
+	final com.sun.management.ThreadMXBean allocation = (com.sun.management.ThreadMXBean) threads;
+	if (!allocation.isThreadAllocatedMemorySupported()
+		|| !allocation.isThreadAllocatedMemoryEnabled()) {
+	    return -1;
+	}
+	final long[] bytes = allocation.getThreadAllocatedBytes(threads
+		.getAllThreadIds());
+	long total = 0;
+	for (int i = 0; i < bytes.length; i++) {
+	    if (bytes[i] > 0) {
+		total += bytes[i];
+	    }
+	}
+	return total;
+    }
+
+    private long collectionCount() {
+	long count = 0;
+	final List<GarbageCollectorMXBean> collectors = ManagementFactory
+		.getGarbageCollectorMXBeans();
+	for (int i = 0; i < collectors.size(); i++) {
+	    count += Math.max(0, collectors.get(i).getCollectionCount());
+	}
+	return count;
+    }
+}
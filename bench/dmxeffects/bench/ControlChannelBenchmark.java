@@ -0,0 +1,73 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.bench;
+
+import dmxeffects.dmx.ControlChannel;
+import dmxeffects.dmx.ControlListener;
+
+/**
+ * Benchmark of triggering a ControlChannel across every value, set up as the
+ * SoundEngine sets up its play and stop controls, so that most values have no
+ * listener and a few do.
+ * 
+ * @author chris
+ */
+public class ControlChannelBenchmark extends Benchmark {
+
+    private final transient ControlChannel channel = new ControlChannel(1,
+	    "Benchmark");
+
+    private transient int triggered = 0;
+
+    private final transient ControlListener listener = new ControlListener() {
+	public void controlTriggered(final int channelValue) {
+	    triggered++;
+	}
+    };
+
+    private transient int count = 0;
+
+    /**
+     * Creates a new instance of ControlChannelBenchmark
+     */
+    public ControlChannelBenchmark() {
+	super("ControlChannel.trigger");
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see dmxeffects.bench.Benchmark#setUp()
+     */
+    public void setUp() throws Exception {
+	channel.setListener(10, listener);
+	channel.setListener(20, listener);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see dmxeffects.bench.Benchmark#operation()
+     */
+    public void operation() throws Exception {
+	count++;
+	channel.trigger(count & 0xFF);
+    }
+}
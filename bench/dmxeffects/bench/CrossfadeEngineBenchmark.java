@@ -0,0 +1,81 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.bench;
+
+import dmxeffects.dmx.DMXFrame;
+import dmxeffects.dmx.Universe;
+import dmxeffects.effects.CrossfadeEngine;
+
+/**
+ * Benchmark of computing one tick of a CrossfadeEngine fading a rig of 256
+ * Universes, every channel with its own fade time and delay.
+ * 
+ * @author chris
+ */
+public class CrossfadeEngineBenchmark extends Benchmark {
+
+    private static final int UNIVERSES = 256;
+
+    private transient CrossfadeEngine engine;
+
+    private transient long time = 0;
+
+    /**
+     * Creates a new instance of CrossfadeEngineBenchmark
+     */
+    public CrossfadeEngineBenchmark() {
+	super("CrossfadeEngine.computeTick");
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see dmxeffects.bench.Benchmark#setUp()
+     */
+    public void setUp() {
+	final Universe[] universes = new Universe[UNIVERSES];
+	for (int i = 0; i < UNIVERSES; i++) {
+	    universes[i] = new Universe(i + 1);
+	}
+	engine = new CrossfadeEngine(universes);
+	final byte[] target = new byte[DMXFrame.MAX_SLOTS];
+	final float[] fadeTimes = new float[DMXFrame.MAX_SLOTS];
+	final float[] delays = new float[DMXFrame.MAX_SLOTS];
+	for (int c = 0; c < DMXFrame.MAX_SLOTS; c++) {
+	    target[c] = (byte) (c * 7);
+	    fadeTimes[c] = 1 + (c % 10);
+	    delays[c] = (c % 4) * 0.5f;
+	}
+	for (int i = 0; i < UNIVERSES; i++) {
+	    engine.fadeTo(universes[i], target, fadeTimes, delays);
+	}
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see dmxeffects.bench.Benchmark#operation()
+     */
+    public void operation() {
+	// Loop within the fades, so every channel is always interpolated
+	time = (time + 1000000000L / 44) % 12000000000L;
+	engine.computeTick(time);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.bench;
+
+import dmxeffects.cues.Cue;
+import dmxeffects.cues.CueList;
+import dmxeffects.dmx.Universe;
+import dmxeffects.dmx.UniverseRegistry;
+
+/**
+ * Benchmark of the GO latency of a CueList, timing each GO from the call
+ * until the cue's levels are visible in the Universes, through the engine,
+ * the DMXInput listeners and merge. Cues alternate every channel of four
+ * Universes between full and zero, as snaps.
+ * 
+ * @author chris
+ */
+public class CueListBenchmark extends Benchmark {
+
+    private static final int UNIVERSES = 4;
+
+    private static final int CUES = 100;
+
+    private transient UniverseRegistry registry;
+
+    private transient Universe[] universes;
+
+    private transient CueList cueList;
+
+    /**
+     * Creates a new instance of CueListBenchmark
+     */
+    public CueListBenchmark() {
+	super("CueList.go");
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see dmxeffects.bench.Benchmark#setUp()
+     */
+    public void setUp() throws Exception {
+	registry = new UniverseRegistry(UNIVERSES);
+	universes = new Universe[UNIVERSES];
+	for (int i = 0; i < UNIVERSES; i++) {
+	    universes[i] = registry.createUniverse(i + 1);
+	}
+	cueList = new CueList(universes);
+	for (int q = 0; q < CUES; q++) {
+	    final Cue cue = new Cue(String.valueOf(q + 1));
+	    for (int u = 1; u <= UNIVERSES; u++) {
+		for (int c = 1; c <= 512; c++) {
+		    cue.setLevel(u, c, ((q & 1) == 0) ? 255 : 0);
+		}
+	    }
+	    cueList.addCue(cue);
+	}
+	cueList.compile();
+	registry.start();
+	cueList.start();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see dmxeffects.bench.Benchmark#operation()
+     */
+    public void operation() throws Exception {
+	if (!cueList.go()) {
+	    cueList.goTo(0);
+	}
+	final int level = ((cueList.getCurrentIndex() & 1) == 0) ? 255 : 0;
+	final Universe last = universes[UNIVERSES - 1];
+	while (last.getValue(512) != level) {
+	    Thread.yield();
+	}
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see dmxeffects.bench.Benchmark#tearDown()
+     */
+    public void tearDown() {
+	cueList.stop();
+    }
+}
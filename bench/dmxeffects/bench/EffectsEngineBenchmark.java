@@ -0,0 +1,94 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.bench;
+
+import dmxeffects.dmx.Universe;
+import dmxeffects.effects.Chase;
+import dmxeffects.effects.EffectsEngine;
+import dmxeffects.effects.Fade;
+import dmxeffects.effects.Flicker;
+import dmxeffects.effects.Oscillator;
+
+/**
+ * Benchmark of computing one tick of an EffectsEngine running two thousand
+ * effects of every kind across four Universes, each covering a few channels
+ * as a fixture would.
+ * 
+ * @author chris
+ */
+public class EffectsEngineBenchmark extends Benchmark {
+
+    private static final int EFFECTS = 2000;
+
+    private static final int UNIVERSES = 4;
+
+    private transient EffectsEngine engine;
+
+    private transient long time = 0;
+
+    /**
+     * Creates a new instance of EffectsEngineBenchmark
+     */
+    public EffectsEngineBenchmark() {
+	super("EffectsEngine.computeTick");
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see dmxeffects.bench.Benchmark#setUp()
+     */
+    public void setUp() {
+	final Universe[] universes = new Universe[UNIVERSES];
+	for (int i = 0; i < UNIVERSES; i++) {
+	    universes[i] = new Universe(i + 1);
+	}
+	engine = new EffectsEngine(universes);
+	for (int e = 0; e < EFFECTS; e++) {
+	    final Universe universe = universes[e % UNIVERSES];
+	    final int first = ((e / UNIVERSES) * 4) % 508 + 1;
+	    switch (e % 4) {
+	    case 0:
+		engine.addEffect(universe, new Oscillator(first, 4,
+			Oscillator.SINE_WAVE, 2.0, 0.25, 0, 255));
+		break;
+	    case 1:
+		engine.addEffect(universe, new Chase(first, 4, 0.1, 255));
+		break;
+	    case 2:
+		engine.addEffect(universe, new Fade(first, 4, 0, 255, 10.0));
+		break;
+	    default:
+		engine.addEffect(universe, new Flicker(first, 4, 0.05, 64,
+			255));
+	    }
+	}
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see dmxeffects.bench.Benchmark#operation()
+     */
+    public void operation() {
+	time += 1000000000L / 44;
+	engine.computeTick(time);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.bench;
+
+import dmxeffects.dmx.DMXFrame;
+import dmxeffects.dmx.InputQueue;
+
+/**
+ * Benchmark of handing a full frame through an InputQueue, offering it and
+ * then polling it back on the same thread.
+ * 
+ * @author chris
+ */
+public class InputQueueBenchmark extends Benchmark {
+
+    private final transient InputQueue queue = new InputQueue(
+	    InputQueue.DEFAULT_CAPACITY);
+
+    private final transient DMXFrame in = new DMXFrame();
+
+    private final transient DMXFrame out = new DMXFrame();
+
+    /**
+     * Creates a new instance of InputQueueBenchmark
+     */
+    public InputQueueBenchmark() {
+	super("InputQueue.offer+poll");
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see dmxeffects.bench.Benchmark#setUp()
+     */
+    public void setUp() {
+	in.setLength(DMXFrame.MAX_SLOTS);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see dmxeffects.bench.Benchmark#operation()
+     */
+    public void operation() {
+	in.setSequence(in.getSequence() + 1);
+	queue.offer(in);
+	queue.poll(out);
+    }
+}
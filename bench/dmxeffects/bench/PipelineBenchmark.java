@@ -0,0 +1,84 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.bench;
+
+import dmxeffects.dmx.DMXFrame;
+import dmxeffects.dmx.InputQueue;
+import dmxeffects.dmx.Universe;
+import dmxeffects.dmx.UniverseRegistry;
+
+/**
+ * Benchmark of the whole input pipeline, timing a single channel change from
+ * being queued as the Generator queues it, through the DMXInput listener and
+ * merge, until it is visible in the Universe.
+ * 
+ * @author chris
+ */
+public class PipelineBenchmark extends Benchmark {
+
+    private final transient DMXFrame patch = new DMXFrame();
+
+    private transient UniverseRegistry registry;
+
+    private transient Universe universe;
+
+    private transient InputQueue queue;
+
+    private transient int count = 0;
+
+    /**
+     * Creates a new instance of PipelineBenchmark
+     */
+    public PipelineBenchmark() {
+	super("Pipeline");
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see dmxeffects.bench.Benchmark#setUp()
+     */
+    public void setUp() {
+	registry = new UniverseRegistry(1);
+	universe = registry.createUniverse(Universe.DEFAULT_UNIVERSE);
+	queue = universe.getInputQueue();
+	registry.start();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see dmxeffects.bench.Benchmark#operation()
+     */
+    public void operation() throws Exception {
+	count++;
+	final int channelNumber = (count & 511) + 1;
+	final int channelValue = universe.getValue(channelNumber) ^ 0xFF;
+	patch.setPatch(true);
+	patch.patchValue(channelNumber, channelValue);
+	patch.setSequence(count);
+	while (!queue.offer(patch)) {
+	    Thread.yield();
+	}
+	while (universe.getValue(channelNumber) != channelValue) {
+	    Thread.yield();
+	}
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.bench;
+
+import dmxeffects.dmx.ChannelHandler;
+import dmxeffects.dmx.FrameUpdate;
+import dmxeffects.dmx.Universe;
+import dmxeffects.dmx.UniverseListener;
+
+/**
+ * Benchmark of applying whole frames to a Universe with a UniverseListener
+ * registered and a ChannelHandler routed a few channels, as a module would
+ * be. Every channel changes in every frame, so each listener method is called
+ * as often as it can be. Steady state should allocate nothing.
+ * 
+ * @author chris
+ */
+public class UniverseListenerBenchmark extends Benchmark {
+
+    private final transient Universe universe = new Universe();
+
+    private final transient byte[] levels = new byte[512];
+
+    private transient int count = 0;
+
+    private transient long total = 0;
+
+    private final transient UniverseListener listener = new UniverseListener() {
+	public void onChannel(final int universeNumber,
+		final int channelNumber, final int channelValue) {
+	    total += channelValue;
+	}
+
+	public void onFrame(final int universeNumber, final FrameUpdate frame) {
+	    total += frame.getChangedCount();
+	}
+    };
+
+    private final transient ChannelHandler handler = new ChannelHandler() {
+	public void onChannel(final int universeNumber,
+		final int channelNumber, final int channelValue) {
+	    total += channelNumber;
+	}
+    };
+
+    /**
+     * Creates a new instance of UniverseListenerBenchmark
+     */
+    public UniverseListenerBenchmark() {
+	super("Universe.setRange+listeners");
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see dmxeffects.bench.Benchmark#setUp()
+     */
+    public void setUp() throws Exception {
+	universe.addUniverseListener(listener);
+	universe.getRouter().subscribe(1, 2, handler);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see dmxeffects.bench.Benchmark#operation()
+     */
+    public void operation() throws Exception {
+	count++;
+	final byte level = (byte) count;
+	for (int i = 0; i < levels.length; i++) {
+	    levels[i] = level;
+	}
+	universe.setRange(1, levels, 0, levels.length);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see dmxeffects.bench.Benchmark#tearDown()
+     */
+    public void tearDown() {
+	universe.removeUniverseListener(listener);
+	universe.getRouter().unsubscribe(handler);
+    }
+}
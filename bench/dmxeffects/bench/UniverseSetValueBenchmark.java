@@ -0,0 +1,52 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.bench;
+
+import dmxeffects.dmx.Universe;
+
+/**
+ * Benchmark of setting single channel values in a Universe, cycling through
+ * every channel with a changing value so that each call is a real change.
+ * 
+ * @author chris
+ */
+public class UniverseSetValueBenchmark extends Benchmark {
+
+    private final transient Universe universe = new Universe();
+
+    private transient int count = 0;
+
+    /**
+     * Creates a new instance of UniverseSetValueBenchmark
+     */
+    public UniverseSetValueBenchmark() {
+	super("Universe.setValue");
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see dmxeffects.bench.Benchmark#operation()
+     */
+    public void operation() throws Exception {
+	count++;
+	universe.setValue((count & 511) + 1, (count >>> 9) & 0xFF);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.bench;
+
+import dmxeffects.dmx.Validator;
+
+/**
+ * Benchmark of validating channel numbers and values, alternating between
+ * the two types of validation and including out of range input.
+ * 
+ * @author chris
+ */
+public class ValidatorBenchmark extends Benchmark {
+
+    private transient int count = 0;
+
+    // Keeps the results live, so the calls cannot be optimised away
+    private transient int valid = 0;
+
+    /**
+     * Creates a new instance of ValidatorBenchmark
+     */
+    public ValidatorBenchmark() {
+	super("Validator.validate");
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see dmxeffects.bench.Benchmark#operation()
+     */
+    public void operation() {
+	count++;
+	final int value = count & 1023;
+	if (Validator.validate(value, ((count & 1) == 0)
+		? Validator.CHANNEL_NUMBER_VALIDATION
+		: Validator.CHANNEL_VALUE_VALIDATION)) {
+	    valid++;
+	}
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see dmxeffects.bench.Benchmark#tearDown()
+     */
+    public void tearDown() {
+	if (valid == 42) {
+	    System.out.print("");
+	}
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects;
+
+/**
+ * Entry point choosing between the GUI and the headless server. With the
+ * --server option the show file named is run by Server; otherwise the GUI is
+ * started by Main. This class has no dependency upon Qt, and Main is only
+ * loaded when the GUI is wanted, so the server may be started this way on a
+ * node with no Qt libraries or windowing system.
+ * 
+ * @author chris
+ */
+public final class Launcher {
+
+    private Launcher() {
+	super();
+    }
+
+    /**
+     * Method run when starting the application.
+     * 
+     * @param args
+     *                Commandline arguments. With --server the show file
+     *                named is run headless, without the GUI.
+     */
+    public static void main(final String[] args) {
+	for (int i = 0; i < args.length; i++) {
+	    if (Server.SERVER_OPTION.equals(args[i])) {
+		Server.main(args);
+		return;
+	    }
+	}
+	Main.main(args);
+    }
+}
@@ -67,7 +67,8 @@ public class Main extends QMainWindow {
     private transient QAction aboutAction;
 
     /**
-     * Method run when starting application.
+     * Method run when starting the GUI. Loading this class loads Qt, so the
+     * headless server is started through Launcher or Server instead.
      * 
      * @param args
      *                Commandline arguments.
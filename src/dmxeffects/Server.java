@@ -0,0 +1,476 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+
+import dmxeffects.cues.Cue;
+import dmxeffects.cues.CueCommandReceiver;
+import dmxeffects.cues.CueList;
+import dmxeffects.dmx.ArtNetReceiver;
+import dmxeffects.dmx.InvalidChannelNumberException;
+import dmxeffects.dmx.InvalidChannelValueException;
+import dmxeffects.dmx.LoadGenerator;
+import dmxeffects.dmx.MergeEngine;
+import dmxeffects.dmx.SACNReceiver;
+import dmxeffects.dmx.Universe;
+import dmxeffects.dmx.UniverseRegistry;
+import dmxeffects.sound.SoundEngine;
+import dmxeffects.sound.SoundTrack;
+
+/**
+ * Headless server, running the DMX and sound engines without any GUI or
+ * windowing system, for instance on a rack-mounted playback node. This class
+ * does not use Qt at all, so may be run directly, or through Launcher with
+ * the --server option. Main is a Qt window, so loading it loads Qt, and it
+ * cannot start the server.
+ * 
+ * The show is read from a file of properties, all of which are optional:
+ * <ul>
+ * <li>universes - comma separated list of Universe numbers to create,
+ * default 1.</li>
+ * <li>merge - merge mode of every Universe: htp, ltp or priority.</li>
+ * <li>artnet - true to receive Art-Net, bound to artnet.address if given.</li>
+ * <li>sacn - true to receive sACN for every Universe, joining the multicast
+ * groups on the interface named by sacn.interface if given.</li>
+ * <li>sound.firstChannel - first channel of the sound controls.</li>
+ * <li>sound.track.N and sound.title.N - file and title of the track cued by
+ * DMX value N.</li>
+ * <li>load.pattern and load.rate - random or ramp frames to generate for
+ * every Universe, at the given frames per second, for testing.</li>
+ * <li>cue.N.levels - levels recorded by cue N of the cue list, for the first
+ * Universe, as a comma separated list of channel@level or first-last@level,
+ * and cue.N.levels.U likewise for Universe U.</li>
+ * <li>cue.N.name, cue.N.fade, cue.N.wait and cue.N.follow - name of cue N,
+ * and its fade, wait and follow times in seconds.</li>
+ * <li>cues.channel - first of the GO and BACK channels of the cue list, in
+ * the first Universe.</li>
+ * <li>cues.port - UDP port on which to receive cue list commands.</li>
+ * </ul>
+ * Cues are played in order of their numbers, and compiled as the show is
+ * loaded, so that starting one needs no further work.
+ * 
+ * @author chris
+ */
+public class Server {
+
+    /**
+     * Option given to Launcher to start the server rather than the GUI.
+     */
+    public static final String SERVER_OPTION = "--server";
+
+    private final transient UniverseRegistry registry = new UniverseRegistry();
+
+    private final transient SoundEngine soundEngine = new SoundEngine();
+
+    private transient ArtNetReceiver artNet = null;
+
+    private transient SACNReceiver sacn = null;
+
+    private transient LoadGenerator load = null;
+
+    private transient CueList cueList = null;
+
+    private transient CueCommandReceiver cueCommands = null;
+
+    private final transient CountDownLatch stopped = new CountDownLatch(1);
+
+    /**
+     * Method run when starting the server.
+     * 
+     * @param args
+     *                Commandline arguments: an optional --server, then the
+     *                show file.
+     */
+    public static void main(final String[] args) {
+	String showFile = null;
+	for (int i = 0; i < args.length; i++) {
+	    if (!SERVER_OPTION.equals(args[i])) {
+		showFile = args[i];
+	    }
+	}
+	final Server server = new Server();
+	try {
+	    if (showFile == null) {
+		server.loadShow(new Properties());
+	    } else {
+		server.loadShow(new File(showFile));
+	    }
+	} catch (OperationFailedException OFE) {
+	    System.err.println(OFE.getMessage());
+	    System.exit(1);
+	}
+	Runtime.getRuntime().addShutdownHook(new Thread("Server Shutdown") {
+	    public void run() {
+		server.stop();
+	    }
+	});
+	server.start();
+	System.out.println("DMXEffects server running with "
+		+ server.getUniverseRegistry().getUniverseCount()
+		+ " universe(s)");
+	server.awaitStop();
+    }
+
+    /**
+     * Creates a new instance of Server
+     */
+    public Server() {
+	super();
+    }
+
+    /**
+     * Load a show from a file of properties.
+     * 
+     * @param file
+     *                The show file.
+     * @throws OperationFailedException
+     *                 The file could not be read, or describes something
+     *                 invalid.
+     */
+    public void loadShow(final File file) throws OperationFailedException {
+	final Properties show = new Properties();
+	InputStream in = null;
+	try {
+	    in = new FileInputStream(file);
+	    show.load(in);
+	} catch (IOException IOE) {
+	    throw new OperationFailedException("Unable to read show " + file
+		    + ": " + IOE.getMessage());
+	} finally {
+	    if (in != null) {
+		try {
+		    in.close();
+		} catch (IOException IOE) {
+		    // Nothing more to read, so nothing lost
+		}
+	    }
+	}
+	loadShow(show);
+    }
+
+    /**
+     * Load a show from properties, creating its Universes, receivers and
+     * sound tracks. This must be done once, before the server is started.
+     * 
+     * @param show
+     *                The properties describing the show.
+     * @throws OperationFailedException
+     *                 The show describes something invalid.
+     */
+    public void loadShow(final Properties show)
+	    throws OperationFailedException {
+	try {
+	    // Universes
+	    final String[] numbers = show.getProperty("universes",
+		    String.valueOf(Universe.DEFAULT_UNIVERSE)).split(",");
+	    final Universe[] universes = new Universe[numbers.length];
+	    for (int i = 0; i < numbers.length; i++) {
+		universes[i] = registry.createUniverse(Integer
+			.parseInt(numbers[i].trim()));
+		final String merge = show.getProperty("merge");
+		if (merge != null) {
+		    universes[i].getMergeEngine().setMergeMode(
+			    parseMergeMode(merge));
+		}
+	    }
+
+	    // Receivers
+	    if (Boolean.valueOf(show.getProperty("artnet")).booleanValue()) {
+		artNet = new ArtNetReceiver(registry);
+		artNet.bind(new InetSocketAddress(show.getProperty(
+			"artnet.address", "0.0.0.0"),
+			ArtNetReceiver.ART_NET_PORT));
+	    }
+	    if (Boolean.valueOf(show.getProperty("sacn")).booleanValue()) {
+		sacn = new SACNReceiver(registry);
+		sacn.bind(new InetSocketAddress(SACNReceiver.SACN_PORT));
+		final NetworkInterface networkInterface = getInterface(show
+			.getProperty("sacn.interface"));
+		for (int i = 0; i < universes.length; i++) {
+		    sacn.joinUniverse(universes[i].getUniverseNumber(),
+			    networkInterface);
+		}
+	    }
+
+	    // Sound
+	    soundEngine.attach(universes[0]);
+	    final int soundChannel = Integer.parseInt(show.getProperty(
+		    "sound.firstChannel", "-1").trim());
+	    if (soundChannel != -1) {
+		universes[0].setAssociation(soundChannel, soundEngine
+			.getChannelsRequired(), SoundEngine.MODULE_NAME);
+	    }
+	    for (int i = 0; i < 256; i++) {
+		final String track = show.getProperty("sound.track." + i);
+		if (track != null) {
+		    soundEngine.setTrack(i, new SoundTrack(new File(track), show
+			    .getProperty("sound.title." + i, track)));
+		}
+	    }
+
+	    // Synthetic load
+	    final String pattern = show.getProperty("load.pattern");
+	    if (pattern != null) {
+		load = new LoadGenerator(universes,
+			"ramp".equals(pattern) ? LoadGenerator.RAMP_PATTERN
+				: LoadGenerator.RANDOM_PATTERN, Double
+				.parseDouble(show.getProperty("load.rate", "44")),
+			null);
+	    }
+
+	    // Cues
+	    loadCues(show, universes);
+	} catch (NumberFormatException NFE) {
+	    throw new OperationFailedException("Invalid number in show: "
+		    + NFE.getMessage());
+	} catch (IllegalArgumentException IAE) {
+	    throw new OperationFailedException("Invalid show: "
+		    + IAE.getMessage());
+	} catch (InvalidChannelNumberException ICNE) {
+	    throw new OperationFailedException("Invalid show: "
+		    + ICNE.getMessage());
+	} catch (InvalidChannelValueException ICVE) {
+	    throw new OperationFailedException("Invalid show: "
+		    + ICVE.getMessage());
+	}
+    }
+
+    /**
+     * Build and compile the cue list of a show, if it has any cues.
+     */
+    private void loadCues(final Properties show, final Universe[] universes)
+	    throws OperationFailedException, InvalidChannelNumberException,
+	    InvalidChannelValueException {
+	final TreeSet<Integer> numbers = new TreeSet<Integer>();
+	final Iterator<String> keys = show.stringPropertyNames().iterator();
+	while (keys.hasNext()) {
+	    final String key = keys.next();
+	    if (key.startsWith("cue.")) {
+		final int end = key.indexOf('.', 4);
+		numbers.add(Integer.valueOf(key.substring(4,
+			(end == -1) ? key.length() : end)));
+	    }
+	}
+	if (numbers.isEmpty()) {
+	    return;
+	}
+	cueList = new CueList(universes);
+	final Iterator<Integer> cueNumbers = numbers.iterator();
+	while (cueNumbers.hasNext()) {
+	    final String prefix = "cue." + cueNumbers.next() + ".";
+	    final Cue cue = new Cue(prefix.substring(4, prefix.length() - 1));
+	    cue.setName(show.getProperty(prefix + "name", cue.getNumber()));
+	    cue.setFadeTime(Double.parseDouble(show.getProperty(
+		    prefix + "fade", "0")));
+	    cue.setWaitTime(Double.parseDouble(show.getProperty(
+		    prefix + "wait", "0")));
+	    final String follow = show.getProperty(prefix + "follow");
+	    if (follow != null) {
+		cue.setFollowTime(Double.parseDouble(follow));
+	    }
+	    for (int u = 0; u < universes.length; u++) {
+		final int universeNumber = universes[u].getUniverseNumber();
+		String levels = show.getProperty(prefix + "levels."
+			+ universeNumber);
+		if ((levels == null) && (u == 0)) {
+		    levels = show.getProperty(prefix + "levels");
+		}
+		if (levels != null) {
+		    parseLevels(cue, universeNumber, levels);
+		}
+	    }
+	    cueList.addCue(cue);
+	}
+	cueList.compile();
+
+	final int cueChannel = Integer.parseInt(show.getProperty(
+		"cues.channel", "-1").trim());
+	if (cueChannel != -1) {
+	    universes[0].setAssociation(cueChannel, CueList.CHANNELS_REQUIRED,
+		    CueList.MODULE_NAME);
+	    cueList.setControlChannels(universes[0], cueChannel);
+	}
+	final String port = show.getProperty("cues.port");
+	if (port != null) {
+	    cueCommands = new CueCommandReceiver(cueList);
+	    cueCommands.bind(new InetSocketAddress(Integer.parseInt(port
+		    .trim())));
+	}
+    }
+
+    /**
+     * Record levels given as channel@level or first-last@level, separated by
+     * commas, into a cue.
+     */
+    private static void parseLevels(final Cue cue, final int universeNumber,
+	    final String levels) throws InvalidChannelNumberException,
+	    InvalidChannelValueException {
+	final String[] entries = levels.split(",");
+	for (int i = 0; i < entries.length; i++) {
+	    final String entry = entries[i].trim();
+	    final int at = entry.indexOf('@');
+	    if (at == -1) {
+		throw new IllegalArgumentException("Level " + entry
+			+ " is not channel@level.");
+	    }
+	    final String channels = entry.substring(0, at).trim();
+	    final int level = Integer.parseInt(entry.substring(at + 1).trim());
+	    final int dash = channels.indexOf('-');
+	    final int first = Integer.parseInt(((dash == -1) ? channels
+		    : channels.substring(0, dash)).trim());
+	    final int last = (dash == -1) ? first : Integer.parseInt(channels
+		    .substring(dash + 1).trim());
+	    for (int c = first; c <= last; c++) {
+		cue.setLevel(universeNumber, c, level);
+	    }
+	}
+    }
+
+    private static int parseMergeMode(final String merge)
+	    throws OperationFailedException {
+	if ("htp".equalsIgnoreCase(merge)) {
+	    return MergeEngine.HTP_MERGE;
+	} else if ("ltp".equalsIgnoreCase(merge)) {
+	    return MergeEngine.LTP_MERGE;
+	} else if ("priority".equalsIgnoreCase(merge)) {
+	    return MergeEngine.PRIORITY_MERGE;
+	}
+	throw new OperationFailedException("Merge mode " + merge
+		+ " is not valid.");
+    }
+
+    private static NetworkInterface getInterface(final String name)
+	    throws OperationFailedException {
+	try {
+	    if (name == null) {
+		// Let the operating system choose
+		return null;
+	    }
+	    final NetworkInterface networkInterface = NetworkInterface
+		    .getByName(name);
+	    if (networkInterface == null) {
+		throw new OperationFailedException("No network interface "
+			+ name + ".");
+	    }
+	    return networkInterface;
+	} catch (SocketException SE) {
+	    throw new OperationFailedException(SE.getMessage());
+	}
+    }
+
+    /**
+     * Start the engines: the DMX listeners, the receivers, the sound player,
+     * any synthetic load and the cue list.
+     */
+    public void start() {
+	registry.start();
+	soundEngine.start();
+	if (artNet != null) {
+	    artNet.start();
+	}
+	if (sacn != null) {
+	    sacn.start();
+	}
+	if (load != null) {
+	    load.start();
+	}
+	if (cueList != null) {
+	    cueList.start();
+	}
+	if (cueCommands != null) {
+	    cueCommands.start();
+	}
+    }
+
+    /**
+     * Stop the receivers, any synthetic load and the cue list, and release
+     * any thread waiting in awaitStop. The DMX listeners and sound player are
+     * daemon threads, so end with the process.
+     */
+    public void stop() {
+	if (load != null) {
+	    load.stop();
+	}
+	if (artNet != null) {
+	    artNet.stop();
+	}
+	if (sacn != null) {
+	    sacn.stop();
+	}
+	if (cueCommands != null) {
+	    cueCommands.stop();
+	}
+	if (cueList != null) {
+	    cueList.stop();
+	}
+	stopped.countDown();
+    }
+
+    /**
+     * Wait until the server is stopped.
+     */
+    public void awaitStop() {
+	try {
+	    stopped.await();
+	} catch (InterruptedException e) {
+	    System.err.println("Thread interruption detected");
+	}
+    }
+
+    // -- Getters -- //
+
+    /**
+     * Get the registry holding the Universes of the show.
+     * 
+     * @return The UniverseRegistry.
+     */
+    public UniverseRegistry getUniverseRegistry() {
+	return registry;
+    }
+
+    /**
+     * Get the sound engine.
+     * 
+     * @return The SoundEngine.
+     */
+    public SoundEngine getSoundEngine() {
+	return soundEngine;
+    }
+
+    /**
+     * Get the cue list of the show.
+     * 
+     * @return The CueList, or null if the show has no cues.
+     */
+    public CueList getCueList() {
+	return cueList;
+    }
+}
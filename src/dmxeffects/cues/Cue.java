@@ -0,0 +1,355 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.cues;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import dmxeffects.dmx.DMXFrame;
+import dmxeffects.dmx.InvalidChannelNumberException;
+import dmxeffects.dmx.InvalidChannelValueException;
+import dmxeffects.dmx.Validator;
+
+/**
+ * A cue of a CueList: the levels of some channels, and the times taken to
+ * reach them. Channels a cue does not record keep the level given by the
+ * cues before it, so only the changes need be recorded.
+ * 
+ * When the cue is started, each channel waits for the wait time and then
+ * fades over the fade time, unless times of its own have been set. If the
+ * cue has a follow time, the next cue in the list is started automatically
+ * that long after this one.
+ * 
+ * A cue is only a description; changes take effect when the CueList holding
+ * it is next compiled.
+ * 
+ * @author chris
+ */
+public class Cue {
+
+    /**
+     * Follow time of a cue which waits for the next GO.
+     */
+    public static final double NO_FOLLOW = -1;
+
+    private final transient String number;
+
+    private transient String name;
+
+    private transient double fadeTime = 0;
+
+    private transient double waitTime = 0;
+
+    private transient double followTime = NO_FOLLOW;
+
+    // Recorded levels by Universe number, -1 where not recorded
+    private final transient TreeMap<Integer, short[]> levels = new TreeMap<Integer, short[]>();
+
+    // Channel fade times and delays by Universe number, NaN where not set
+    private final transient TreeMap<Integer, float[]> channelFades = new TreeMap<Integer, float[]>();
+
+    private final transient TreeMap<Integer, float[]> channelDelays = new TreeMap<Integer, float[]>();
+
+    /**
+     * Creates a new instance of Cue, recording no levels.
+     * 
+     * @param number
+     *                The number the cue is known by, such as "12" or
+     *                "12.5".
+     */
+    public Cue(final String number) {
+	super();
+	if (number == null) {
+	    throw new IllegalArgumentException("A cue must have a number.");
+	}
+	this.number = number;
+	this.name = number;
+    }
+
+    /**
+     * Get the number the cue is known by.
+     * 
+     * @return The cue number.
+     */
+    public String getNumber() {
+	return number;
+    }
+
+    /**
+     * Get the name of the cue.
+     * 
+     * @return The name, which is the cue number unless set.
+     */
+    public String getName() {
+	return name;
+    }
+
+    /**
+     * Set the name of the cue.
+     * 
+     * @param name
+     *                The name to set.
+     */
+    public void setName(final String name) {
+	this.name = name;
+    }
+
+    /**
+     * Get the time each channel takes to fade.
+     * 
+     * @return The fade time in seconds.
+     */
+    public double getFadeTime() {
+	return fadeTime;
+    }
+
+    /**
+     * Set the time each channel takes to fade, unless it has a time of its
+     * own.
+     * 
+     * @param fadeTime
+     *                The fade time in seconds, or 0 to snap.
+     */
+    public void setFadeTime(final double fadeTime) {
+	checkTime(fadeTime);
+	this.fadeTime = fadeTime;
+    }
+
+    /**
+     * Get the time between the cue being started and its channels starting
+     * to fade.
+     * 
+     * @return The wait time in seconds.
+     */
+    public double getWaitTime() {
+	return waitTime;
+    }
+
+    /**
+     * Set the time between the cue being started and its channels starting
+     * to fade. Any delays of individual channels are added to this.
+     * 
+     * @param waitTime
+     *                The wait time in seconds.
+     */
+    public void setWaitTime(final double waitTime) {
+	checkTime(waitTime);
+	this.waitTime = waitTime;
+    }
+
+    /**
+     * Get the time between the cue being started and the next being started
+     * automatically.
+     * 
+     * @return The follow time in seconds, or NO_FOLLOW.
+     */
+    public double getFollowTime() {
+	return followTime;
+    }
+
+    /**
+     * Set the time between the cue being started and the next being started
+     * automatically.
+     * 
+     * @param followTime
+     *                The follow time in seconds, or NO_FOLLOW to wait for
+     *                the next GO.
+     */
+    public void setFollowTime(final double followTime) {
+	if (followTime != NO_FOLLOW) {
+	    checkTime(followTime);
+	}
+	this.followTime = followTime;
+    }
+
+    /**
+     * Record the level of a channel.
+     * 
+     * @param universeNumber
+     *                The number of the Universe holding the channel.
+     * @param channelNumber
+     *                The channel number, from 1 to 512.
+     * @param channelValue
+     *                The level, from 0 to 255.
+     * @throws InvalidChannelNumberException
+     *                 The channel number was not valid.
+     * @throws InvalidChannelValueException
+     *                 The level was not valid.
+     */
+    public void setLevel(final int universeNumber, final int channelNumber,
+	    final int channelValue) throws InvalidChannelNumberException,
+	    InvalidChannelValueException {
+	checkChannel(channelNumber);
+	if (Validator.validate(channelValue,
+		Validator.CHANNEL_VALUE_VALIDATION) == false) {
+	    throw new InvalidChannelValueException(channelValue);
+	}
+	short[] recorded = levels.get(Integer.valueOf(universeNumber));
+	if (recorded == null) {
+	    recorded = new short[DMXFrame.MAX_SLOTS];
+	    Arrays.fill(recorded, (short) -1);
+	    levels.put(Integer.valueOf(universeNumber), recorded);
+	}
+	recorded[channelNumber - 1] = (short) channelValue;
+    }
+
+    /**
+     * Get the level recorded for a channel.
+     * 
+     * @param universeNumber
+     *                The number of the Universe holding the channel.
+     * @param channelNumber
+     *                The channel number, from 1 to 512.
+     * @return The level, or -1 if the cue does not record the channel.
+     * @throws InvalidChannelNumberException
+     *                 The channel number was not valid.
+     */
+    public int getLevel(final int universeNumber, final int channelNumber)
+	    throws InvalidChannelNumberException {
+	checkChannel(channelNumber);
+	final short[] recorded = levels.get(Integer.valueOf(universeNumber));
+	return (recorded == null) ? -1 : recorded[channelNumber - 1];
+    }
+
+    /**
+     * Stop recording the level of a channel, so that it keeps the level of
+     * the cues before.
+     * 
+     * @param universeNumber
+     *                The number of the Universe holding the channel.
+     * @param channelNumber
+     *                The channel number, from 1 to 512.
+     * @throws InvalidChannelNumberException
+     *                 The channel number was not valid.
+     */
+    public void clearLevel(final int universeNumber, final int channelNumber)
+	    throws InvalidChannelNumberException {
+	checkChannel(channelNumber);
+	final short[] recorded = levels.get(Integer.valueOf(universeNumber));
+	if (recorded != null) {
+	    recorded[channelNumber - 1] = -1;
+	}
+    }
+
+    /**
+     * Give a channel its own fade time and delay, in place of those of the
+     * cue.
+     * 
+     * @param universeNumber
+     *                The number of the Universe holding the channel.
+     * @param channelNumber
+     *                The channel number, from 1 to 512.
+     * @param channelFade
+     *                The fade time in seconds.
+     * @param channelDelay
+     *                The time after the cue's wait time before the channel
+     *                starts to fade, in seconds.
+     * @throws InvalidChannelNumberException
+     *                 The channel number was not valid.
+     */
+    public void setChannelTime(final int universeNumber,
+	    final int channelNumber, final double channelFade,
+	    final double channelDelay) throws InvalidChannelNumberException {
+	checkChannel(channelNumber);
+	checkTime(channelFade);
+	checkTime(channelDelay);
+	getTimes(channelFades, universeNumber)[channelNumber - 1] = (float) channelFade;
+	getTimes(channelDelays, universeNumber)[channelNumber - 1] = (float) channelDelay;
+    }
+
+    /**
+     * Get the numbers of the Universes for which the cue records levels or
+     * times.
+     * 
+     * @return The Universe numbers.
+     */
+    Set<Integer> getUniverseNumbers() {
+	final Set<Integer> numbers = new TreeSet<Integer>(levels.keySet());
+	numbers.addAll(channelFades.keySet());
+	return numbers;
+    }
+
+    /**
+     * Get the levels recorded for a Universe.
+     * 
+     * @return The levels with channel 1 at index 0, -1 where not recorded,
+     *         or null if none are.
+     */
+    short[] getLevels(final int universeNumber) {
+	return levels.get(Integer.valueOf(universeNumber));
+    }
+
+    /**
+     * Get the fade times set for the channels of a Universe.
+     * 
+     * @return The times with channel 1 at index 0, NaN where not set, or
+     *         null if none are.
+     */
+    float[] getChannelFades(final int universeNumber) {
+	return channelFades.get(Integer.valueOf(universeNumber));
+    }
+
+    /**
+     * Get the delays set for the channels of a Universe.
+     * 
+     * @return The delays with channel 1 at index 0, NaN where not set, or
+     *         null if none are.
+     */
+    float[] getChannelDelays(final int universeNumber) {
+	return channelDelays.get(Integer.valueOf(universeNumber));
+    }
+
+    private static float[] getTimes(final TreeMap<Integer, float[]> times,
+	    final int universeNumber) {
+	float[] universeTimes = times.get(Integer.valueOf(universeNumber));
+	if (universeTimes == null) {
+	    universeTimes = new float[DMXFrame.MAX_SLOTS];
+	    Arrays.fill(universeTimes, Float.NaN);
+	    times.put(Integer.valueOf(universeNumber), universeTimes);
+	}
+	return universeTimes;
+    }
+
+    private static void checkChannel(final int channelNumber)
+	    throws InvalidChannelNumberException {
+	if (Validator.validate(channelNumber,
+		Validator.CHANNEL_NUMBER_VALIDATION) == false) {
+	    throw new InvalidChannelNumberException(channelNumber);
+	}
+    }
+
+    private static void checkTime(final double time) {
+	if (!(time >= 0)) {
+	    throw new IllegalArgumentException("Time " + time
+		    + " must not be negative.");
+	}
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+	return number.equals(name) ? number : number + " " + name;
+    }
+}
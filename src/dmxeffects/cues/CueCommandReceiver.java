@@ -0,0 +1,96 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.cues;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import dmxeffects.dmx.DatagramReceiver;
+
+/**
+ * Network input receiving commands for a CueList, one to each UDP packet, as
+ * plain ASCII text:
+ * <ul>
+ * <li>GO - start the next cue.</li>
+ * <li>BACK - start the previous cue.</li>
+ * <li>GOTO number - start the cue with the given number.</li>
+ * </ul>
+ * Commands are not case sensitive, and may have surrounding white space or a
+ * line ending. Anything else, including a GOTO to a cue which does not
+ * exist, is counted as ignored. Commands are performed on the receiver
+ * thread as each packet is read, so a cue is started with no further
+ * hand-off. This receiver feeds no Universes directly, so has no
+ * UniverseRegistry.
+ * 
+ * @author chris
+ */
+public class CueCommandReceiver extends DatagramReceiver {
+
+    /**
+     * UDP port on which commands are received when no other is given.
+     */
+    public static final int COMMAND_PORT = 7700;
+
+    // Largest packet worth reading, well beyond any command
+    private static final int BUFFER_SIZE = 256;
+
+    private static final String GOTO_COMMAND = "GOTO";
+
+    private final transient CueList cueList;
+
+    private final transient byte[] text = new byte[BUFFER_SIZE];
+
+    /**
+     * Creates a new instance of CueCommandReceiver
+     * 
+     * @param cueList
+     *                The CueList to control.
+     */
+    public CueCommandReceiver(final CueList cueList) {
+	super(null, "Cue Command", BUFFER_SIZE);
+	this.cueList = cueList;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see dmxeffects.dmx.DatagramReceiver#handlePacket(java.nio.ByteBuffer)
+     */
+    protected void handlePacket(final ByteBuffer packet) {
+	final int length = packet.remaining();
+	packet.get(text, 0, length);
+	final String command = new String(text, 0, length,
+		StandardCharsets.US_ASCII).trim();
+	if ("GO".equalsIgnoreCase(command)) {
+	    cueList.go();
+	} else if ("BACK".equalsIgnoreCase(command)) {
+	    cueList.back();
+	} else if (command.regionMatches(true, 0, GOTO_COMMAND + " ", 0,
+		GOTO_COMMAND.length() + 1)) {
+	    try {
+		cueList.goTo(command.substring(GOTO_COMMAND.length()).trim());
+	    } catch (IllegalArgumentException IAE) {
+		packetsIgnored++;
+	    }
+	} else {
+	    packetsIgnored++;
+	}
+    }
+}
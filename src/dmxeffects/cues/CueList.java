@@ -0,0 +1,584 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.cues;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import dmxeffects.dmx.ChannelHandler;
+import dmxeffects.dmx.ControlChannel;
+import dmxeffects.dmx.ControlListener;
+import dmxeffects.dmx.DMXFrame;
+import dmxeffects.dmx.InvalidChannelNumberException;
+import dmxeffects.dmx.InvalidChannelValueException;
+import dmxeffects.dmx.Universe;
+import dmxeffects.effects.CrossfadeEngine;
+
+/**
+ * Ordered list of cues played back onto a set of Universes, with GO, BACK and
+ * GOTO controls.
+ * 
+ * When the list is compiled, typically as the show is loaded, the full state
+ * of every Universe at each cue is worked out, tracking the levels of
+ * channels a cue does not record from the cues before it, and stored along
+ * with the fade time and delay of every channel. Starting a cue then only
+ * hands these arrays to a CrossfadeEngine and asks it to tick at once,
+ * rather than at its next tick, so the first frame of the cue is output
+ * within a fraction of a millisecond of the GO. The time this takes is
+ * recorded by the engine and may be read with getLastGoLatencyNanos.
+ * 
+ * Cues may be started by calling the controls directly, from a pair of
+ * channels of a Universe acting as ControlChannels, or over the network by a
+ * CueCommandReceiver. Follow times are checked by the engine at each tick.
+ * 
+ * @author chris
+ */
+public class CueList implements ChannelHandler {
+
+    /**
+     * Name of the module, owning its control channels. Associations of
+     * channels to the module should use it.
+     */
+    public static final String MODULE_NAME = "Cue List";
+
+    /**
+     * Number of DMX channels used to control the list: GO, then BACK.
+     */
+    public static final int CHANNELS_REQUIRED = 2;
+
+    /**
+     * Lowest value of a control channel which triggers its action, as the
+     * channel is raised past it.
+     */
+    public static final int TRIGGER_LEVEL = 128;
+
+    /**
+     * A cue compiled into the arrays handed to the engine, one of each for
+     * every Universe of the list.
+     */
+    private static class Step {
+	final Cue cue;
+
+	final byte[][] frames;
+
+	final float[][] fadeTimes;
+
+	final float[][] delays;
+
+	final long followNanos;
+
+	Step(final Cue cue, final byte[][] frames, final float[][] fadeTimes,
+		final float[][] delays, final long followNanos) {
+	    this.cue = cue;
+	    this.frames = frames;
+	    this.fadeTimes = fadeTimes;
+	    this.delays = delays;
+	    this.followNanos = followNanos;
+	}
+    }
+
+    /**
+     * Engine checking for follows before each tick.
+     */
+    private class Engine extends CrossfadeEngine {
+
+	Engine(final Universe[] universes) {
+	    super(universes);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see dmxeffects.effects.CrossfadeEngine#render(long,
+	 *      dmxeffects.dmx.DMXFrame[])
+	 */
+	protected void render(final long time, final DMXFrame[] output) {
+	    final long due = followTime;
+	    if ((due >= 0) && (time >= due)) {
+		follow();
+	    }
+	    super.render(time, output);
+	}
+    }
+
+    private final transient Universe[] universes;
+
+    private final transient Engine engine;
+
+    private final transient List<Cue> cues = new ArrayList<Cue>();
+
+    private final transient ControlChannel[] controls = new ControlChannel[CHANNELS_REQUIRED];
+
+    private transient volatile CueListener[] listeners = new CueListener[0];
+
+    // -- Playback, guarded by this -- //
+    private transient Step[] steps = new Step[0];
+
+    private transient Map<String, Integer> positions = new HashMap<String, Integer>();
+
+    private transient int current = -1;
+
+    // Engine time at which the current cue is followed, or -1
+    private transient volatile long followTime = -1;
+
+    // -- Control channels, guarded by this -- //
+    private transient Universe controlUniverse = null;
+
+    private transient volatile int firstChannel = -1;
+
+    /**
+     * Creates a new, empty, instance of CueList
+     * 
+     * @param universes
+     *                The Universes the cues are played back onto.
+     */
+    public CueList(final Universe[] universes) {
+	super();
+	this.universes = universes.clone();
+	engine = new Engine(universes);
+
+	// Control Channel 1 is GO, Control Channel 2 is BACK
+	controls[0] = new ControlChannel(1, MODULE_NAME);
+	controls[1] = new ControlChannel(2, MODULE_NAME);
+	try {
+	    controls[0].setBand(TRIGGER_LEVEL, 255, new ControlListener() {
+		public void controlTriggered(final int channelValue) {
+		    go();
+		}
+	    });
+	    controls[1].setBand(TRIGGER_LEVEL, 255, new ControlListener() {
+		public void controlTriggered(final int channelValue) {
+		    back();
+		}
+	    });
+	} catch (InvalidChannelValueException ICVE) {
+	    ICVE.printStackTrace(System.err);
+	}
+	for (int i = 0; i < CHANNELS_REQUIRED; i++) {
+	    // Ignore jitter of a fader held at the trigger level
+	    controls[i].setHysteresis(2);
+	}
+    }
+
+    /**
+     * Start the engine playing back the cues.
+     */
+    public void start() {
+	engine.start();
+    }
+
+    /**
+     * Stop the engine playing back the cues.
+     */
+    public void stop() {
+	engine.stop();
+    }
+
+    // -- Programming -- //
+
+    /**
+     * Add a cue to the end of the list. It is played back once the list is
+     * next compiled.
+     * 
+     * @param cue
+     *                The cue to add.
+     */
+    public synchronized void addCue(final Cue cue) {
+	cues.add(cue);
+    }
+
+    /**
+     * Remove a cue from the list. It is still played back until the list is
+     * next compiled.
+     * 
+     * @param cue
+     *                The cue to remove.
+     */
+    public synchronized void removeCue(final Cue cue) {
+	cues.remove(cue);
+    }
+
+    /**
+     * Get the cues of the list, as last added or removed.
+     * 
+     * @return The cues, in order.
+     */
+    public synchronized Cue[] getCues() {
+	return cues.toArray(new Cue[cues.size()]);
+    }
+
+    /**
+     * Work out the state of every Universe at each cue, and the times of
+     * every channel, ready for playback. This replaces what was last
+     * compiled, leaving the current cue at the same position.
+     * 
+     * @throws IllegalArgumentException
+     *                 Two cues have the same number, or a cue records a
+     *                 Universe the list does not play back onto.
+     */
+    public void compile() {
+	final Cue[] list = getCues();
+	final Step[] compiled = new Step[list.length];
+	final Map<String, Integer> numbers = new HashMap<String, Integer>();
+	final byte[][] state = new byte[universes.length][DMXFrame.MAX_SLOTS];
+	for (int i = 0; i < list.length; i++) {
+	    final Cue cue = list[i];
+	    if (numbers.put(cue.getNumber(), Integer.valueOf(i)) != null) {
+		throw new IllegalArgumentException("Cue " + cue.getNumber()
+			+ " is in the list more than once.");
+	    }
+	    final Iterator<Integer> recorded = cue.getUniverseNumbers()
+		    .iterator();
+	    while (recorded.hasNext()) {
+		findUniverse(recorded.next().intValue());
+	    }
+	    compiled[i] = compile(cue, state);
+	}
+	synchronized (this) {
+	    steps = compiled;
+	    positions = numbers;
+	    if (current >= compiled.length) {
+		current = compiled.length - 1;
+	    }
+	}
+    }
+
+    /**
+     * Compile one cue, updating the state of the Universes from the cues
+     * before it. Channels without times of their own share one array of
+     * times across the Universes.
+     */
+    private Step compile(final Cue cue, final byte[][] state) {
+	final float fadeTime = (float) cue.getFadeTime();
+	final float waitTime = (float) cue.getWaitTime();
+	float[] cueFades = null;
+	float[] cueDelays = null;
+	final byte[][] frames = new byte[universes.length][];
+	final float[][] fadeTimes = new float[universes.length][];
+	final float[][] delays = new float[universes.length][];
+	for (int u = 0; u < universes.length; u++) {
+	    final int universeNumber = universes[u].getUniverseNumber();
+	    final short[] levels = cue.getLevels(universeNumber);
+	    if (levels != null) {
+		for (int c = 0; c < DMXFrame.MAX_SLOTS; c++) {
+		    if (levels[c] >= 0) {
+			state[u][c] = (byte) levels[c];
+		    }
+		}
+	    }
+	    frames[u] = state[u].clone();
+
+	    final float[] channelFades = cue.getChannelFades(universeNumber);
+	    final float[] channelDelays = cue
+		    .getChannelDelays(universeNumber);
+	    if (channelFades == null) {
+		if (cueFades == null) {
+		    cueFades = new float[DMXFrame.MAX_SLOTS];
+		    cueDelays = new float[DMXFrame.MAX_SLOTS];
+		    for (int c = 0; c < DMXFrame.MAX_SLOTS; c++) {
+			cueFades[c] = fadeTime;
+			cueDelays[c] = waitTime;
+		    }
+		}
+		fadeTimes[u] = cueFades;
+		delays[u] = cueDelays;
+	    } else {
+		fadeTimes[u] = new float[DMXFrame.MAX_SLOTS];
+		delays[u] = new float[DMXFrame.MAX_SLOTS];
+		for (int c = 0; c < DMXFrame.MAX_SLOTS; c++) {
+		    final boolean own = !Float.isNaN(channelFades[c]);
+		    fadeTimes[u][c] = own ? channelFades[c] : fadeTime;
+		    delays[u][c] = waitTime + (own ? channelDelays[c] : 0);
+		}
+	    }
+	}
+	final double follow = cue.getFollowTime();
+	return new Step(cue, frames, fadeTimes, delays,
+		(follow == Cue.NO_FOLLOW) ? -1
+			: (long) (follow * CrossfadeEngine.NANOS_PER_SECOND));
+    }
+
+    private int findUniverse(final int universeNumber) {
+	for (int u = 0; u < universes.length; u++) {
+	    if (universes[u].getUniverseNumber() == universeNumber) {
+		return u;
+	    }
+	}
+	throw new IllegalArgumentException("Universe " + universeNumber
+		+ " is not played back by this cue list.");
+    }
+
+    // -- Playback -- //
+
+    /**
+     * Start the next cue.
+     * 
+     * @return True if a cue was started, false if the last has been
+     *         reached.
+     */
+    public synchronized boolean go() {
+	if (current + 1 >= steps.length) {
+	    return false;
+	}
+	start(current + 1);
+	return true;
+    }
+
+    /**
+     * Start the previous cue, with its own times.
+     * 
+     * @return True if a cue was started, false if the first has been
+     *         reached.
+     */
+    public synchronized boolean back() {
+	if (current <= 0) {
+	    return false;
+	}
+	start(current - 1);
+	return true;
+    }
+
+    /**
+     * Start the cue at a position in the list.
+     * 
+     * @param index
+     *                The position of the cue, starting from 0.
+     * @throws IllegalArgumentException
+     *                 There is no cue at the position.
+     */
+    public synchronized void goTo(final int index) {
+	if ((index < 0) || (index >= steps.length)) {
+	    throw new IllegalArgumentException("There is no cue at position "
+		    + index + ".");
+	}
+	start(index);
+    }
+
+    /**
+     * Start the cue with a number.
+     * 
+     * @param number
+     *                The number of the cue.
+     * @throws IllegalArgumentException
+     *                 There is no cue with the number.
+     */
+    public synchronized void goTo(final String number) {
+	final Integer index = positions.get(number);
+	if (index == null) {
+	    throw new IllegalArgumentException("There is no cue " + number
+		    + ".");
+	}
+	start(index.intValue());
+    }
+
+    /**
+     * Hand a compiled cue to the engine, and have it output the first frame
+     * at once.
+     */
+    private void start(final int index) {
+	final long since = System.nanoTime();
+	final Step step = steps[index];
+	current = index;
+	followTime = -1;
+	for (int u = 0; u < universes.length; u++) {
+	    engine.fadeTo(universes[u], step.frames[u], step.fadeTimes[u],
+		    step.delays[u]);
+	}
+	if (step.followNanos >= 0) {
+	    followTime = engine.getTime() + step.followNanos;
+	}
+	engine.requestTick(since);
+	final CueListener[] informed = listeners;
+	for (int i = 0; i < informed.length; i++) {
+	    informed[i].cueStarted(index, step.cue);
+	}
+    }
+
+    /**
+     * Start the next cue because the current one is followed, unless
+     * another has been started since.
+     */
+    private synchronized void follow() {
+	final long due = followTime;
+	if ((due >= 0) && (engine.getTime() >= due)) {
+	    followTime = -1;
+	    go();
+	}
+    }
+
+    /**
+     * Get the position of the cue last started.
+     * 
+     * @return The position, or -1 if no cue has been started.
+     */
+    public synchronized int getCurrentIndex() {
+	return current;
+    }
+
+    /**
+     * Get the cue last started.
+     * 
+     * @return The cue, or null if no cue has been started.
+     */
+    public synchronized Cue getCurrentCue() {
+	return (current == -1) ? null : steps[current].cue;
+    }
+
+    /**
+     * Get the number of cues compiled for playback.
+     * 
+     * @return The number of cues.
+     */
+    public synchronized int getCueCount() {
+	return steps.length;
+    }
+
+    /**
+     * Get the time from the last cue being started to its first frame being
+     * sent to the Universes.
+     * 
+     * @return The time in nanoseconds, or 0 if no cue has been started
+     *         while the engine was running.
+     */
+    public long getLastGoLatencyNanos() {
+	return engine.getLastResponseNanos();
+    }
+
+    /**
+     * Get the longest time from a cue being started to its first frame
+     * being sent to the Universes.
+     * 
+     * @return The time in nanoseconds, or 0 if no cue has been started
+     *         while the engine was running.
+     */
+    public long getMaxGoLatencyNanos() {
+	return engine.getMaxResponseNanos();
+    }
+
+    /**
+     * Get the engine playing back the cues, to watch its statistics.
+     * 
+     * @return The CrossfadeEngine.
+     */
+    public CrossfadeEngine getEngine() {
+	return engine;
+    }
+
+    // -- Control channels -- //
+
+    /**
+     * Act upon a pair of channels of a Universe as GO and BACK controls,
+     * ceasing to act upon any previous channels. Raising a channel to
+     * TRIGGER_LEVEL or above performs its action once.
+     * 
+     * @param universe
+     *                The Universe holding the channels, or null for no
+     *                control channels.
+     * @param first
+     *                The number of the GO channel, followed by the BACK
+     *                channel.
+     * @throws InvalidChannelNumberException
+     *                 The channels are not within the Universe.
+     */
+    public synchronized void setControlChannels(final Universe universe,
+	    final int first) throws InvalidChannelNumberException {
+	if (controlUniverse != null) {
+	    controlUniverse.getRouter().unsubscribe(this);
+	}
+	controlUniverse = universe;
+	firstChannel = (universe == null) ? -1 : first;
+	if (universe != null) {
+	    universe.getRouter().subscribe(first, CHANNELS_REQUIRED, this);
+	}
+    }
+
+    /**
+     * Get the first of the channels acting as controls.
+     * 
+     * @return The number of the GO channel, or -1 if there is none.
+     */
+    public int getFirstControlChannel() {
+	return firstChannel;
+    }
+
+    /**
+     * Handle a change to one of the control channels.
+     * 
+     * @param universeNumber
+     *                The number of the Universe holding the channel.
+     * @param channelNumber
+     *                The channel number, from 1 to 512.
+     * @param channelValue
+     *                The new value of the channel, from 0 to 255.
+     */
+    public void onChannel(final int universeNumber, final int channelNumber,
+	    final int channelValue) {
+	final int control = channelNumber - firstChannel;
+	if ((control < 0) || (control >= CHANNELS_REQUIRED)) {
+	    // Routed before a change of control channels took effect
+	    return;
+	}
+	try {
+	    controls[control].trigger(channelValue);
+	} catch (InvalidChannelValueException ICVE) {
+	    // Should not occur
+	    ICVE.printStackTrace(System.err);
+	}
+    }
+
+    // -- Listeners -- //
+
+    /**
+     * Register a listener to be informed when a cue is started.
+     * 
+     * @param listener
+     *                The listener to add.
+     */
+    public synchronized void addCueListener(final CueListener listener) {
+	final CueListener[] current = listeners;
+	final CueListener[] replacement = new CueListener[current.length + 1];
+	System.arraycopy(current, 0, replacement, 0, current.length);
+	replacement[current.length] = listener;
+	listeners = replacement;
+    }
+
+    /**
+     * Stop informing a listener when a cue is started.
+     * 
+     * @param listener
+     *                The listener to remove.
+     */
+    public synchronized void removeCueListener(final CueListener listener) {
+	final CueListener[] current = listeners;
+	for (int i = 0; i < current.length; i++) {
+	    if (current[i] == listener) {
+		final CueListener[] replacement = new CueListener[current.length - 1];
+		System.arraycopy(current, 0, replacement, 0, i);
+		System.arraycopy(current, i + 1, replacement, i,
+			current.length - i - 1);
+		listeners = replacement;
+		return;
+	    }
+	}
+    }
+}
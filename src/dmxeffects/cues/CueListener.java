@@ -0,0 +1,40 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.cues;
+
+/**
+ * Interface for objects wishing to be informed when a cue is started.
+ * 
+ * @author chris
+ */
+public interface CueListener {
+
+    /**
+     * Handle a cue being started. This is called on the thread which
+     * started the cue, which may be the engine thread for a followed cue, so
+     * should return quickly.
+     * 
+     * @param index
+     *                The position of the cue in its list.
+     * @param cue
+     *                The cue started.
+     */
+    void cueStarted(int index, Cue cue);
+}
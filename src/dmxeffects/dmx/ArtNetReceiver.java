@@ -0,0 +1,171 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.dmx;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Network input receiving Art-Net ArtDmx packets and feeding their payloads to
+ * the matching Universes of a UniverseRegistry. The Art-Net port address of a
+ * packet (Net and SubUni combined) is used directly as the Universe number.
+ * 
+ * @author chris
+ */
+public class ArtNetReceiver extends DatagramReceiver {
+
+    /**
+     * UDP port on which Art-Net is sent.
+     */
+    public static final int ART_NET_PORT = 6454;
+
+    /**
+     * Art-Net OpCode of an ArtDmx packet.
+     */
+    public static final int OP_DMX = 0x5000;
+
+    /**
+     * Lowest Art-Net protocol version accepted.
+     */
+    public static final int PROTOCOL_VERSION = 14;
+
+    private static final byte[] PACKET_ID = { 'A', 'r', 't', '-', 'N', 'e',
+	    't', 0 };
+
+    // Offsets within an ArtDmx packet
+    private static final int OPCODE_OFFSET = 8;
+
+    private static final int VERSION_OFFSET = 10;
+
+    private static final int SEQUENCE_OFFSET = 12;
+
+    private static final int SUBUNI_OFFSET = 14;
+
+    private static final int NET_OFFSET = 15;
+
+    private static final int LENGTH_OFFSET = 16;
+
+    private static final int DATA_OFFSET = 18;
+
+    // Largest packet worth reading, a full ArtDmx packet
+    private static final int BUFFER_SIZE = DATA_OFFSET + DMXFrame.MAX_SLOTS;
+
+    // Number of sequence values in use, as 0 is reserved
+    private static final int SEQUENCE_RANGE = 255;
+
+    // Highest Art-Net port address, which is a 15 bit value
+    private static final int MAX_PORT_ADDRESS = 0x7FFF;
+
+    // Per port address: last Art-Net sequence seen, and extended sequence
+    private final transient int[] lastSequence = new int[MAX_PORT_ADDRESS + 1];
+
+    private final transient int[] frameSequence = new int[MAX_PORT_ADDRESS + 1];
+
+    /**
+     * Creates a new instance of ArtNetReceiver
+     * 
+     * @param registry
+     *                The registry holding the Universes to feed.
+     */
+    public ArtNetReceiver(final UniverseRegistry registry) {
+	super(registry, "Art-Net", BUFFER_SIZE);
+    }
+
+    /**
+     * Parse an ArtDmx packet in place and pass its payload to the matching
+     * Universe. Anything else is counted and ignored.
+     * 
+     * @param packet
+     *                Buffer holding the packet between its position and
+     *                limit.
+     */
+    protected void handlePacket(final ByteBuffer packet) {
+	final int size = packet.remaining();
+	if ((size < DATA_OFFSET) || !hasPacketId(packet)) {
+	    packetsIgnored++;
+	    return;
+	}
+	// The OpCode is little-endian, everything else is big-endian
+	final int opcode = (packet.get(OPCODE_OFFSET) & 0xFF)
+		| ((packet.get(OPCODE_OFFSET + 1) & 0xFF) << 8);
+	final int version = ((packet.get(VERSION_OFFSET) & 0xFF) << 8)
+		| (packet.get(VERSION_OFFSET + 1) & 0xFF);
+	if ((opcode != OP_DMX) || (version < PROTOCOL_VERSION)) {
+	    packetsIgnored++;
+	    return;
+	}
+	final int portAddress = ((packet.get(NET_OFFSET) & 0x7F) << 8)
+		| (packet.get(SUBUNI_OFFSET) & 0xFF);
+	final int length = ((packet.get(LENGTH_OFFSET) & 0xFF) << 8)
+		| (packet.get(LENGTH_OFFSET + 1) & 0xFF);
+	final Universe universe = registry.getUniverse(portAddress);
+	if ((universe == null) || (length < 1) || (length > DMXFrame.MAX_SLOTS)
+		|| (size < DATA_OFFSET + length)) {
+	    packetsIgnored++;
+	    return;
+	}
+
+	final int sequence = nextSequence(portAddress, packet
+		.get(SEQUENCE_OFFSET) & 0xFF);
+	if (sequence < 0) {
+	    // Overtaken by a later packet, so already out of date
+	    packetsIgnored++;
+	    return;
+	}
+
+	packet.position(DATA_OFFSET);
+	packet.get(frame.getData(), 0, length);
+	frame.setStartCode(DMXFrame.NULL_START_CODE);
+	frame.setLength(length);
+	frame.setSequence(sequence);
+	offerFrame(universe);
+    }
+
+    /**
+     * Extend the 8 bit Art-Net sequence of a port address into the frame
+     * sequence, so that the listener can count any packets lost. A sequence
+     * of 0 means the sender does not number its packets; otherwise sequences
+     * run from 1 to 255 and wrap back to 1, so steps are counted modulo 255.
+     * 
+     * @return The frame sequence, or -1 if the packet is a repeat or
+     *         arrived after a later one.
+     */
+    private int nextSequence(final int portAddress, final int sequence) {
+	int step = 1;
+	if ((sequence != 0) && (lastSequence[portAddress] != 0)) {
+	    step = (sequence - lastSequence[portAddress] + SEQUENCE_RANGE)
+		    % SEQUENCE_RANGE;
+	    if ((step == 0) || (step > SEQUENCE_RANGE / 2)) {
+		return -1;
+	    }
+	}
+	lastSequence[portAddress] = sequence;
+	frameSequence[portAddress] += step;
+	return frameSequence[portAddress];
+    }
+
+    private boolean hasPacketId(final ByteBuffer packet) {
+	for (int i = 0; i < PACKET_ID.length; i++) {
+	    if (packet.get(i) != PACKET_ID[i]) {
+		return false;
+	    }
+	}
+	return true;
+    }
+}
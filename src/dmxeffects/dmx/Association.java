@@ -0,0 +1,109 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.dmx;
+
+/**
+ * A range of channels associated with an owner, such as a module or a
+ * labelled light. Associations are immutable.
+ * 
+ * @author chris
+ */
+public class Association {
+
+    private final transient int firstChannel;
+
+    private final transient int lastChannel;
+
+    private final transient String owner;
+
+    /**
+     * Creates a new instance of Association
+     * 
+     * @param firstChannel
+     *                The first channel of the range.
+     * @param lastChannel
+     *                The last channel of the range, inclusive.
+     * @param owner
+     *                The name of the owner.
+     */
+    public Association(final int firstChannel, final int lastChannel,
+	    final String owner) {
+	super();
+	this.firstChannel = firstChannel;
+	this.lastChannel = lastChannel;
+	this.owner = owner;
+    }
+
+    /**
+     * Get the first channel of the range.
+     * 
+     * @return The first channel number.
+     */
+    public int getFirstChannel() {
+	return firstChannel;
+    }
+
+    /**
+     * Get the last channel of the range.
+     * 
+     * @return The last channel number, inclusive.
+     */
+    public int getLastChannel() {
+	return lastChannel;
+    }
+
+    /**
+     * Get the number of channels in the range.
+     * 
+     * @return The size of the range.
+     */
+    public int getCount() {
+	return lastChannel - firstChannel + 1;
+    }
+
+    /**
+     * Get the owner of the range.
+     * 
+     * @return The name of the owner.
+     */
+    public String getOwner() {
+	return owner;
+    }
+
+    /**
+     * Check whether the range holds a channel.
+     * 
+     * @param channelNumber
+     *                The channel number.
+     * @return True if the channel is within the range.
+     */
+    public boolean contains(final int channelNumber) {
+	return (channelNumber >= firstChannel) && (channelNumber <= lastChannel);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+	return owner + " [" + firstChannel + "-" + lastChannel + "]";
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.dmx;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Interval index of the Associations of channels with their owners. Ranges
+ * never overlap; assigning a range to a new owner trims or splits the ranges
+ * it covers. The index is kept sorted by first channel, and by owner, so that
+ * finding the owner of a channel, the ranges of an owner, or the ranges
+ * overlapping some channels each take O(log n) time plus the size of the
+ * answer.
+ * 
+ * Channel numbers are not limited to a single Universe, so one index may hold
+ * a whole patch if channels are numbered across Universes. The index is not
+ * thread safe.
+ * 
+ * @author chris
+ */
+public class AssociationIndex {
+
+    private static final Association[] NO_ASSOCIATIONS = new Association[0];
+
+    // Every range, keyed by its first channel
+    private final transient TreeMap<Integer, Association> byChannel = new TreeMap<Integer, Association>();
+
+    // The ranges of each owner, keyed by first channel
+    private final transient Map<String, TreeMap<Integer, Association>> byOwner = new HashMap<String, TreeMap<Integer, Association>>();
+
+    /**
+     * Creates a new, empty, instance of AssociationIndex
+     */
+    public AssociationIndex() {
+	super();
+    }
+
+    /**
+     * Find the range holding a channel.
+     * 
+     * @param channelNumber
+     *                The channel number.
+     * @return The Association holding the channel, or null if there is none.
+     */
+    public Association get(final int channelNumber) {
+	final Map.Entry<Integer, Association> entry = byChannel
+		.floorEntry(Integer.valueOf(channelNumber));
+	if ((entry == null) || !entry.getValue().contains(channelNumber)) {
+	    return null;
+	}
+	return entry.getValue();
+    }
+
+    /**
+     * Find the ranges which overlap some channels.
+     * 
+     * @param firstChannel
+     *                The first channel.
+     * @param lastChannel
+     *                The last channel, inclusive.
+     * @return The overlapping Associations, in channel order.
+     */
+    public Association[] getOverlaps(final int firstChannel,
+	    final int lastChannel) {
+	final List<Association> overlaps = collectOverlaps(firstChannel,
+		lastChannel);
+	return overlaps.toArray(new Association[overlaps.size()]);
+    }
+
+    /**
+     * Get the ranges of an owner.
+     * 
+     * @param owner
+     *                The name of the owner.
+     * @return The owner's Associations, in channel order.
+     */
+    public Association[] getRanges(final String owner) {
+	final TreeMap<Integer, Association> ranges = byOwner.get(owner);
+	if (ranges == null) {
+	    return NO_ASSOCIATIONS;
+	}
+	return ranges.values().toArray(new Association[ranges.size()]);
+    }
+
+    /**
+     * Get every range, in channel order.
+     * 
+     * @return All of the Associations.
+     */
+    public Association[] getAll() {
+	return byChannel.values().toArray(new Association[byChannel.size()]);
+    }
+
+    /**
+     * Get the number of ranges held.
+     * 
+     * @return The number of Associations.
+     */
+    public int size() {
+	return byChannel.size();
+    }
+
+    /**
+     * Associate some channels with an owner, removing them from any other
+     * range. The new range is joined with any adjacent range of the same
+     * owner.
+     * 
+     * @param firstChannel
+     *                The first channel.
+     * @param lastChannel
+     *                The last channel, inclusive.
+     * @param owner
+     *                The name of the owner.
+     * @return The Associations which were overlapped, as they were before.
+     */
+    public Association[] assign(final int firstChannel,
+	    final int lastChannel, final String owner) {
+	if (owner == null) {
+	    throw new IllegalArgumentException("No owner was provided.");
+	}
+	if (lastChannel < firstChannel) {
+	    throw new IllegalArgumentException("Channel " + lastChannel
+		    + " is before channel " + firstChannel + ".");
+	}
+	final Association[] overlapped = remove(firstChannel, lastChannel);
+	int first = firstChannel;
+	int last = lastChannel;
+	final Association before = get(first - 1);
+	if ((before != null) && before.getOwner().equals(owner)) {
+	    first = before.getFirstChannel();
+	    delete(before);
+	}
+	final Association after = get(last + 1);
+	if ((after != null) && after.getOwner().equals(owner)) {
+	    last = after.getLastChannel();
+	    delete(after);
+	}
+	insert(new Association(first, last, owner));
+	return overlapped;
+    }
+
+    /**
+     * Remove some channels from any range, trimming or splitting the ranges
+     * which held them.
+     * 
+     * @param firstChannel
+     *                The first channel.
+     * @param lastChannel
+     *                The last channel, inclusive.
+     * @return The Associations which were overlapped, as they were before.
+     */
+    public Association[] remove(final int firstChannel, final int lastChannel) {
+	final List<Association> overlaps = collectOverlaps(firstChannel,
+		lastChannel);
+	for (int i = 0; i < overlaps.size(); i++) {
+	    final Association overlap = overlaps.get(i);
+	    delete(overlap);
+	    if (overlap.getFirstChannel() < firstChannel) {
+		insert(new Association(overlap.getFirstChannel(),
+			firstChannel - 1, overlap.getOwner()));
+	    }
+	    if (overlap.getLastChannel() > lastChannel) {
+		insert(new Association(lastChannel + 1, overlap
+			.getLastChannel(), overlap.getOwner()));
+	    }
+	}
+	return overlaps.toArray(new Association[overlaps.size()]);
+    }
+
+    /**
+     * Move every range of one owner to another, in one operation.
+     * 
+     * @param owner
+     *                The name of the current owner.
+     * @param newOwner
+     *                The name of the new owner.
+     * @return The ranges moved, under their new owner.
+     */
+    public Association[] reassign(final String owner, final String newOwner) {
+	if (newOwner == null) {
+	    throw new IllegalArgumentException("No owner was provided.");
+	}
+	final Association[] ranges = getRanges(owner);
+	final Association[] moved = new Association[ranges.length];
+	for (int i = 0; i < ranges.length; i++) {
+	    delete(ranges[i]);
+	}
+	for (int i = 0; i < ranges.length; i++) {
+	    moved[i] = new Association(ranges[i].getFirstChannel(), ranges[i]
+		    .getLastChannel(), newOwner);
+	    insert(moved[i]);
+	}
+	return moved;
+    }
+
+    /**
+     * Remove every range of an owner.
+     * 
+     * @param owner
+     *                The name of the owner.
+     * @return The ranges removed.
+     */
+    public Association[] removeOwner(final String owner) {
+	final Association[] ranges = getRanges(owner);
+	for (int i = 0; i < ranges.length; i++) {
+	    delete(ranges[i]);
+	}
+	return ranges;
+    }
+
+    private List<Association> collectOverlaps(final int firstChannel,
+	    final int lastChannel) {
+	final List<Association> overlaps = new ArrayList<Association>();
+	Integer start = byChannel.floorKey(Integer.valueOf(firstChannel));
+	if ((start == null)
+		|| (byChannel.get(start).getLastChannel() < firstChannel)) {
+	    start = Integer.valueOf(firstChannel);
+	}
+	final Iterator<Association> ranges = byChannel.subMap(start, true,
+		Integer.valueOf(lastChannel), true).values().iterator();
+	while (ranges.hasNext()) {
+	    overlaps.add(ranges.next());
+	}
+	return overlaps;
+    }
+
+    private void insert(final Association association) {
+	final Integer key = Integer.valueOf(association.getFirstChannel());
+	byChannel.put(key, association);
+	TreeMap<Integer, Association> ranges = byOwner.get(association
+		.getOwner());
+	if (ranges == null) {
+	    ranges = new TreeMap<Integer, Association>();
+	    byOwner.put(association.getOwner(), ranges);
+	}
+	ranges.put(key, association);
+    }
+
+    private void delete(final Association association) {
+	final Integer key = Integer.valueOf(association.getFirstChannel());
+	byChannel.remove(key);
+	final TreeMap<Integer, Association> ranges = byOwner.get(association
+		.getOwner());
+	if (ranges != null) {
+	    ranges.remove(key);
+	    if (ranges.isEmpty()) {
+		byOwner.remove(association.getOwner());
+	    }
+	}
+    }
+}
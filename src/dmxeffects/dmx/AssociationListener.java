@@ -0,0 +1,51 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.dmx;
+
+/**
+ * Interface for objects wishing to be informed of changes to the associations
+ * between channels of a Universe and the elements using them.
+ * 
+ * @author chris
+ */
+public interface AssociationListener {
+
+    /**
+     * Handle the update of the association of a range of channels.
+     * 
+     * @param firstChannel
+     *                The first channel number of the range, from 1 to 512.
+     * @param count
+     *                The size of the range.
+     * @param association
+     *                The module name.
+     */
+    void associationChanged(int firstChannel, int count, String association);
+
+    /**
+     * Handle the removal of a range of associations.
+     * 
+     * @param firstChannel
+     *                The first channel number of the range.
+     * @param count
+     *                The size of the range.
+     */
+    void associationsRemoved(int firstChannel, int count);
+}
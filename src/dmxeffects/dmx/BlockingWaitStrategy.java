@@ -0,0 +1,70 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.dmx;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * WaitStrategy which parks the consumer thread until the producer signals that
+ * a frame has been published. An idle listener uses no CPU at all, at the cost
+ * of a thread wake-up for the first frame after a quiet period.
+ * 
+ * @author chris
+ */
+public class BlockingWaitStrategy implements WaitStrategy {
+
+    /**
+     * The consumer thread, while it is parked or about to park.
+     */
+    private transient volatile Thread waiter = null;
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see dmxeffects.dmx.WaitStrategy#waitFor(dmxeffects.dmx.Drainable)
+     */
+    public void waitFor(final Drainable queue) throws InterruptedException {
+	waiter = Thread.currentThread();
+	try {
+	    // The queue must be checked after publishing the waiter, so that
+	    // a frame offered in between is never missed.
+	    while (queue.isEmpty()) {
+		LockSupport.park(this);
+		if (Thread.interrupted()) {
+		    throw new InterruptedException();
+		}
+	    }
+	} finally {
+	    waiter = null;
+	}
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see dmxeffects.dmx.WaitStrategy#signal()
+     */
+    public void signal() {
+	final Thread parked = waiter;
+	if (parked != null) {
+	    LockSupport.unpark(parked);
+	}
+    }
+}
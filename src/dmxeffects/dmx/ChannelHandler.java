@@ -0,0 +1,44 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.dmx;
+
+/**
+ * Interface for objects handling changes to the particular channels they are
+ * routed by a ChannelRouter.
+ * 
+ * Methods are called on the thread applying the change, as for a
+ * UniverseListener.
+ * 
+ * @author chris
+ */
+public interface ChannelHandler {
+
+    /**
+     * Handle a change to the value of a channel routed to this handler.
+     * 
+     * @param universeNumber
+     *                The number of the Universe holding the channel.
+     * @param channelNumber
+     *                The channel number, from 1 to 512.
+     * @param channelValue
+     *                The new value of the channel, from 0 to 255.
+     */
+    void onChannel(int universeNumber, int channelNumber, int channelValue);
+}
@@ -0,0 +1,217 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.dmx;
+
+/**
+ * Routing table from the channels of a Universe to the handlers subscribed to
+ * them. When an update is applied, only the handlers subscribed to channels
+ * which changed are called, so the cost grows with the number of relevant
+ * changes rather than with the number of channels times the number of
+ * handlers.
+ * 
+ * The table is replaced, never modified, when a subscription changes, so the
+ * thread applying updates reads it without locks.
+ * 
+ * @author chris
+ */
+public class ChannelRouter {
+
+    private static final ChannelHandler[] NO_HANDLERS = new ChannelHandler[0];
+
+    /**
+     * Immutable routing table.
+     */
+    private static class Table {
+	// Handlers for each channel, with channel 1 at index 0
+	final ChannelHandler[][] routes;
+
+	// Channels with at least one handler
+	final ChannelSet subscribed;
+
+	Table(final ChannelHandler[][] routes, final ChannelSet subscribed) {
+	    this.routes = routes;
+	    this.subscribed = subscribed;
+	}
+    }
+
+    private transient volatile Table table;
+
+    /**
+     * Creates a new, empty, instance of ChannelRouter
+     */
+    public ChannelRouter() {
+	super();
+	final ChannelHandler[][] routes = new ChannelHandler[DMXFrame.MAX_SLOTS][];
+	for (int i = 0; i < routes.length; i++) {
+	    routes[i] = NO_HANDLERS;
+	}
+	table = new Table(routes, new ChannelSet());
+    }
+
+    /**
+     * Route a range of channels to a handler. Subscribing a handler to a
+     * channel it already has has no effect.
+     * 
+     * @param firstChannel
+     *                The first channel of the range, from 1 to 512.
+     * @param count
+     *                The number of channels in the range.
+     * @param handler
+     *                The handler to call when one of the channels changes.
+     * @throws InvalidChannelNumberException
+     *                 The range does not lie within channels 1 to 512.
+     */
+    public synchronized void subscribe(final int firstChannel,
+	    final int count, final ChannelHandler handler)
+	    throws InvalidChannelNumberException {
+	validateRange(firstChannel, count);
+	final Table current = table;
+	final ChannelHandler[][] routes = current.routes.clone();
+	final ChannelSet subscribed = new ChannelSet(current.subscribed);
+	for (int c = firstChannel; c < firstChannel + count; c++) {
+	    final ChannelHandler[] handlers = routes[c - 1];
+	    if (indexOf(handlers, handler) == -1) {
+		final ChannelHandler[] replacement = new ChannelHandler[handlers.length + 1];
+		System.arraycopy(handlers, 0, replacement, 0, handlers.length);
+		replacement[handlers.length] = handler;
+		routes[c - 1] = replacement;
+		subscribed.add(c);
+	    }
+	}
+	table = new Table(routes, subscribed);
+    }
+
+    /**
+     * Stop routing a range of channels to a handler.
+     * 
+     * @param firstChannel
+     *                The first channel of the range, from 1 to 512.
+     * @param count
+     *                The number of channels in the range.
+     * @param handler
+     *                The handler to unsubscribe.
+     * @throws InvalidChannelNumberException
+     *                 The range does not lie within channels 1 to 512.
+     */
+    public synchronized void unsubscribe(final int firstChannel,
+	    final int count, final ChannelHandler handler)
+	    throws InvalidChannelNumberException {
+	validateRange(firstChannel, count);
+	final Table current = table;
+	final ChannelHandler[][] routes = current.routes.clone();
+	final ChannelSet subscribed = new ChannelSet();
+	for (int c = 1; c <= DMXFrame.MAX_SLOTS; c++) {
+	    if ((c >= firstChannel) && (c < firstChannel + count)) {
+		routes[c - 1] = without(routes[c - 1], handler);
+	    }
+	    if (routes[c - 1].length > 0) {
+		subscribed.add(c);
+	    }
+	}
+	table = new Table(routes, subscribed);
+    }
+
+    /**
+     * Stop routing every channel to a handler.
+     * 
+     * @param handler
+     *                The handler to unsubscribe.
+     */
+    public void unsubscribe(final ChannelHandler handler) {
+	try {
+	    unsubscribe(1, DMXFrame.MAX_SLOTS, handler);
+	} catch (InvalidChannelNumberException ICNE) {
+	    // Should not occur as the range is every channel
+	    ICNE.printStackTrace(System.err);
+	}
+    }
+
+    /**
+     * Check whether any channel has a handler.
+     * 
+     * @return True if there are no subscriptions.
+     */
+    public boolean isEmpty() {
+	return table.subscribed.isEmpty();
+    }
+
+    /**
+     * Call the handlers of every changed channel. Called only by the thread
+     * applying the update.
+     * 
+     * @param universeNumber
+     *                The number of the Universe updated.
+     * @param changed
+     *                The channels which changed.
+     * @param values
+     *                The values of all 512 channels, unsigned.
+     */
+    void dispatch(final int universeNumber, final ChannelSet changed,
+	    final byte[] values) {
+	final Table current = table;
+	for (int c = changed.nextShared(current.subscribed, 1); c != -1; c = changed
+		.nextShared(current.subscribed, c + 1)) {
+	    final ChannelHandler[] handlers = current.routes[c - 1];
+	    final int channelValue = values[c - 1] & 0xFF;
+	    for (int h = 0; h < handlers.length; h++) {
+		handlers[h].onChannel(universeNumber, c, channelValue);
+	    }
+	}
+    }
+
+    private static int indexOf(final ChannelHandler[] handlers,
+	    final ChannelHandler handler) {
+	for (int i = 0; i < handlers.length; i++) {
+	    if (handlers[i] == handler) {
+		return i;
+	    }
+	}
+	return -1;
+    }
+
+    private static ChannelHandler[] without(final ChannelHandler[] handlers,
+	    final ChannelHandler handler) {
+	final int index = indexOf(handlers, handler);
+	if (index == -1) {
+	    return handlers;
+	}
+	if (handlers.length == 1) {
+	    return NO_HANDLERS;
+	}
+	final ChannelHandler[] replacement = new ChannelHandler[handlers.length - 1];
+	System.arraycopy(handlers, 0, replacement, 0, index);
+	System.arraycopy(handlers, index + 1, replacement, index,
+		handlers.length - index - 1);
+	return replacement;
+    }
+
+    private static void validateRange(final int firstChannel, final int count)
+	    throws InvalidChannelNumberException {
+	if (Validator.validate(firstChannel,
+		Validator.CHANNEL_NUMBER_VALIDATION) == false) {
+	    throw new InvalidChannelNumberException(firstChannel);
+	}
+	if ((count < 1)
+		|| (Validator.validate(firstChannel + count - 1,
+			Validator.CHANNEL_NUMBER_VALIDATION) == false)) {
+	    throw new InvalidChannelNumberException(firstChannel + count - 1);
+	}
+    }
+}
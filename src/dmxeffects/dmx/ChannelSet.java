@@ -0,0 +1,171 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.dmx;
+
+/**
+ * Set of DMX channel numbers, from 1 to 512, stored as a 512 bit bitset.
+ * 
+ * @author chris
+ */
+public class ChannelSet {
+
+    private static final int WORDS = 512 / 64;
+
+    private final transient long[] words = new long[WORDS];
+
+    /**
+     * Creates a new, empty, instance of ChannelSet
+     */
+    public ChannelSet() {
+	super();
+    }
+
+    /**
+     * Creates a new instance of ChannelSet holding the same channels as
+     * another.
+     * 
+     * @param source
+     *                The set to copy.
+     */
+    public ChannelSet(final ChannelSet source) {
+	super();
+	System.arraycopy(source.words, 0, words, 0, WORDS);
+    }
+
+    /**
+     * Add a channel to the set.
+     * 
+     * @param channelNumber
+     *                The channel number, from 1 to 512.
+     */
+    public void add(final int channelNumber) {
+	final int index = channelNumber - 1;
+	words[index >>> 6] |= 1L << index;
+    }
+
+    /**
+     * Check whether a channel is in the set.
+     * 
+     * @param channelNumber
+     *                The channel number, from 1 to 512.
+     * @return True if the channel is in the set.
+     */
+    public boolean contains(final int channelNumber) {
+	final int index = channelNumber - 1;
+	return (words[index >>> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * Find the first channel in the set at or after a given channel.
+     * 
+     * @param channelNumber
+     *                The channel number to start from, from 1 to 512.
+     * @return The next channel number in the set, or -1 if there are none.
+     */
+    public int next(final int channelNumber) {
+	int index = channelNumber - 1;
+	int word = index >>> 6;
+	if (word >= WORDS) {
+	    return -1;
+	}
+	long bits = words[word] & (-1L << index);
+	while (bits == 0) {
+	    word++;
+	    if (word == WORDS) {
+		return -1;
+	    }
+	    bits = words[word];
+	}
+	return (word << 6) + Long.numberOfTrailingZeros(bits) + 1;
+    }
+
+    /**
+     * Find the first channel at or after a given channel which is in both
+     * this set and another.
+     * 
+     * @param other
+     *                The other set.
+     * @param channelNumber
+     *                The channel number to start from, from 1 to 512.
+     * @return The next channel number in both sets, or -1 if there are none.
+     */
+    public int nextShared(final ChannelSet other, final int channelNumber) {
+	int index = channelNumber - 1;
+	int word = index >>> 6;
+	if (word >= WORDS) {
+	    return -1;
+	}
+	long bits = words[word] & other.words[word] & (-1L << index);
+	while (bits == 0) {
+	    word++;
+	    if (word == WORDS) {
+		return -1;
+	    }
+	    bits = words[word] & other.words[word];
+	}
+	return (word << 6) + Long.numberOfTrailingZeros(bits) + 1;
+    }
+
+    /**
+     * Get the number of channels in the set.
+     * 
+     * @return The number of channels.
+     */
+    public int size() {
+	int size = 0;
+	for (int i = 0; i < WORDS; i++) {
+	    size += Long.bitCount(words[i]);
+	}
+	return size;
+    }
+
+    /**
+     * Check whether the set holds no channels.
+     * 
+     * @return True if the set is empty.
+     */
+    public boolean isEmpty() {
+	for (int i = 0; i < WORDS; i++) {
+	    if (words[i] != 0) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * Replace the contents of this set with those of another.
+     * 
+     * @param source
+     *                The set to copy.
+     */
+    public void copyFrom(final ChannelSet source) {
+	System.arraycopy(source.words, 0, words, 0, WORDS);
+    }
+
+    /**
+     * Remove all channels from the set.
+     */
+    public void clear() {
+	for (int i = 0; i < WORDS; i++) {
+	    words[i] = 0;
+	}
+    }
+}
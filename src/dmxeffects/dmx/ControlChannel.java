@@ -19,25 +19,75 @@
  */
 package dmxeffects.dmx;
 
-import com.trolltech.qt.core.QObject;
-
 /**
- * Class linking specific channel values to specific actions.
+ * Class linking bands of channel values to specific actions. An action is
+ * triggered only when the channel value enters its band, not on every update
+ * within it, so a fader held on a value performs its action once. A band is
+ * left only once the value has moved more than the hysteresis beyond it, so
+ * noise around the edge of a band does not trigger it repeatedly.
+ * 
+ * The bands are held as a table of ranges sorted by value, replaced rather
+ * than modified when a band changes, so triggering needs no locks. Triggers
+ * should come from one thread, such as that applying updates to a Universe.
  * 
  * @author chris
  * 
  */
-public class ControlChannel extends QObject {
+public class ControlChannel {
+
+    /**
+     * Immutable table of bands, sorted and not overlapping.
+     */
+    private static class Table {
+	final int[] low;
+
+	final int[] high;
+
+	final ControlListener[] listeners;
+
+	Table(final int[] low, final int[] high,
+		final ControlListener[] listeners) {
+	    this.low = low;
+	    this.high = high;
+	    this.listeners = listeners;
+	}
+
+	/**
+	 * Find the band holding a value.
+	 * 
+	 * @return The index of the band, or -1 if there is none.
+	 */
+	int find(final int val) {
+	    int lo = 0;
+	    int hi = low.length - 1;
+	    while (lo <= hi) {
+		final int mid = (lo + hi) >>> 1;
+		if (high[mid] < val) {
+		    lo = mid + 1;
+		} else if (low[mid] > val) {
+		    hi = mid - 1;
+		} else {
+		    return mid;
+		}
+	    }
+	    return -1;
+	}
+    }
 
     private final transient int moduleChanNumber;
 
     private final transient String moduleName;
 
-    /**
-     * Signal generated from a control, which includes the channel value in
-     * case this is significant.
-     */
-    public transient Signal1<Integer>[] controlSignal;
+    private transient volatile Table table = new Table(new int[0],
+	    new int[0], new ControlListener[0]);
+
+    private transient volatile int hysteresis = 0;
+
+    // -- State of the triggering thread -- //
+    // Table in use at the last trigger, and the band the value was in
+    private transient Table activeTable;
+
+    private transient int activeBand = -1;
 
     /**
      * Create a new channel for controls.
@@ -47,72 +97,193 @@ public class ControlChannel extends QObject {
      * @param module
      *                The module this ControlChannel relates to
      */
-    // Bah, sodding lack of generic arrays means this will always warn
-    // there may be some workaround required to fix this, until then
-    // suppress
-    @SuppressWarnings("unchecked")
     public ControlChannel(int number, String module) {
 	super();
-	controlSignal = new Signal1[256];
 	moduleChanNumber = number;
 	moduleName = module;
     }
 
     /**
-     * Add a new value-signal pair to the ControlChannel.
+     * Add a new value-listener pair to the ControlChannel. This is a band
+     * holding just the one value.
      * 
      * @param val
      *                The DMX value to associate with the action
-     * @param signal
-     *                The signal to be generated when triggered
+     * @param listener
+     *                The listener to be informed when triggered, or null
+     *                for no action.
      * @throws InvalidChannelValueException
      *                 Indication that the provided value was not valid.
      */
-    public void setSignal(final int val, final Signal1<Integer> signal)
+    public void setListener(final int val, final ControlListener listener)
 	    throws InvalidChannelValueException {
-	if (Validator.validate(val, Validator.CHANNEL_VALUE_VALIDATION)) {
-	    controlSignal[val] = signal;
-	} else {
-	    throw new InvalidChannelValueException(val);
+	setBand(val, val, listener);
+    }
+
+    /**
+     * Link a band of values to an action, replacing the actions of any
+     * values within it.
+     * 
+     * @param low
+     *                The lowest DMX value of the band.
+     * @param high
+     *                The highest DMX value of the band.
+     * @param listener
+     *                The listener to be informed when the value enters the
+     *                band, or null for no action.
+     * @throws InvalidChannelValueException
+     *                 Indication that a provided value was not valid.
+     */
+    public synchronized void setBand(final int low, final int high,
+	    final ControlListener listener) throws InvalidChannelValueException {
+	if (Validator.validate(low, Validator.CHANNEL_VALUE_VALIDATION) == false) {
+	    throw new InvalidChannelValueException(low);
+	}
+	if ((Validator.validate(high, Validator.CHANNEL_VALUE_VALIDATION) == false)
+		|| (high < low)) {
+	    throw new InvalidChannelValueException(high);
+	}
+	final Table current = table;
+	final int size = current.low.length;
+	// At worst one band is split in two, and one added
+	final int[] newLow = new int[size + 2];
+	final int[] newHigh = new int[size + 2];
+	final ControlListener[] newListeners = new ControlListener[size + 2];
+	int n = 0;
+	boolean added = (listener == null);
+	for (int i = 0; i < size; i++) {
+	    // Keep any parts of the old band outside the new one, in order
+	    if (current.low[i] < low) {
+		newLow[n] = current.low[i];
+		newHigh[n] = Math.min(current.high[i], low - 1);
+		newListeners[n++] = current.listeners[i];
+	    }
+	    if (current.high[i] > high) {
+		if (!added) {
+		    newLow[n] = low;
+		    newHigh[n] = high;
+		    newListeners[n++] = listener;
+		    added = true;
+		}
+		newLow[n] = Math.max(current.low[i], high + 1);
+		newHigh[n] = current.high[i];
+		newListeners[n++] = current.listeners[i];
+	    }
+	}
+	if (!added) {
+	    newLow[n] = low;
+	    newHigh[n] = high;
+	    newListeners[n++] = listener;
 	}
+	final int[] compactLow = new int[n];
+	final int[] compactHigh = new int[n];
+	final ControlListener[] compactListeners = new ControlListener[n];
+	System.arraycopy(newLow, 0, compactLow, 0, n);
+	System.arraycopy(newHigh, 0, compactHigh, 0, n);
+	System.arraycopy(newListeners, 0, compactListeners, 0, n);
+	table = new Table(compactLow, compactHigh, compactListeners);
     }
 
     /**
-     * Get a specific Signal object.
+     * Get a specific ControlListener.
      * 
      * @param val
-     *                The signal to get
-     * @return The signal for this value of the channel.
+     *                The value of the listener to get
+     * @return The listener for the band holding this value of the channel,
+     *         or null if none.
      * @throws InvalidChannelValueException
      *                 Indication that the provided value was not valid.
      */
-    public Signal1<Integer> getSignal(final int val)
+    public ControlListener getListener(final int val)
 	    throws InvalidChannelValueException {
 	if (Validator.validate(val, Validator.CHANNEL_VALUE_VALIDATION)) {
-	    return controlSignal[val];
+	    final Table current = table;
+	    final int band = current.find(val);
+	    return (band == -1) ? null : current.listeners[band];
 	} else {
 	    throw new InvalidChannelValueException(val);
 	}
     }
 
     /**
-     * Trigger a specific Signal.
+     * Get the number of bands with actions.
+     * 
+     * @return The number of bands.
+     */
+    public int getBandCount() {
+	return table.low.length;
+    }
+
+    /**
+     * Set how far the value must move beyond a band before leaving it.
+     * 
+     * @param hysteresis
+     *                The number of values, 0 to leave as soon as the value
+     *                is outside the band.
+     */
+    public void setHysteresis(final int hysteresis) {
+	if (hysteresis < 0) {
+	    throw new IllegalArgumentException("Hysteresis " + hysteresis
+		    + " is negative.");
+	}
+	this.hysteresis = hysteresis;
+    }
+
+    /**
+     * Get how far the value must move beyond a band before leaving it.
+     * 
+     * @return The number of values.
+     */
+    public int getHysteresis() {
+	return hysteresis;
+    }
+
+    /**
+     * Forget the band the value was last in, so the next value triggers the
+     * action of its band even if unchanged. Should be called from the
+     * triggering thread.
+     */
+    public void reset() {
+	activeTable = null;
+	activeBand = -1;
+    }
+
+    /**
+     * Handle a new value of the channel, triggering the listener of its band
+     * if the value has just entered it.
      * 
      * @param val
-     *                The value of Signal to trigger.
+     *                The value to trigger.
      * @throws InvalidChannelValueException
      *                 Indication that the provided value was not valid.
      */
     public void trigger(final int val) throws InvalidChannelValueException {
-	if (Validator.validate(val, Validator.CHANNEL_VALUE_VALIDATION)) {
-	    try {
-		controlSignal[val].emit(Integer.valueOf(val));
-	    } catch (NullPointerException e) {
-		// Nothing to signal
-	    }
-	} else {
+	if (Validator.validate(val, Validator.CHANNEL_VALUE_VALIDATION) == false) {
 	    throw new InvalidChannelValueException(val);
 	}
+	final Table current = table;
+	if (current != activeTable) {
+	    // Bands changed, so the old one means nothing
+	    activeTable = current;
+	    activeBand = -1;
+	}
+	final int active = activeBand;
+	if (active != -1) {
+	    final int margin = hysteresis;
+	    if ((val >= current.low[active] - margin)
+		    && (val <= current.high[active] + margin)) {
+		// Still within the band
+		return;
+	    }
+	}
+	final int band = current.find(val);
+	activeBand = band;
+	if (band != -1) {
+	    final ControlListener listener = current.listeners[band];
+	    if (listener != null) {
+		listener.controlTriggered(val);
+	    }
+	}
     }
 
     /**
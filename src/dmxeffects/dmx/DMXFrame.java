@@ -0,0 +1,240 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.dmx;
+
+/**
+ * A single frame of DMX data as it moves through the input pipeline. Each
+ * frame carries its start code, the number of channel slots it holds and a
+ * sequence number assigned by its producer, so that a frame can always be
+ * applied to the Universe as one unit.
+ * 
+ * Frames are intended to be preallocated and reused, rather than created for
+ * each packet of data received.
+ * 
+ * A frame may instead be a patch, holding values for only some of its
+ * channels. A patch is applied as one unit just as a full frame is, but costs
+ * only as much as the channels it holds.
+ * 
+ * @author chris
+ */
+public class DMXFrame {
+
+    /**
+     * Maximum number of channel slots that a frame may hold.
+     */
+    public static final int MAX_SLOTS = 512;
+
+    /**
+     * Start code indicating the frame holds standard dimmer level data.
+     */
+    public static final int NULL_START_CODE = 0x00;
+
+    private transient int startCode = NULL_START_CODE;
+
+    private transient int length = 0;
+
+    private transient int sequence = 0;
+
+    private final transient byte[] data = new byte[MAX_SLOTS];
+
+    private final transient ChannelSet patchChannels = new ChannelSet();
+
+    private transient boolean patch = false;
+
+    /**
+     * Creates a new, empty, instance of DMXFrame
+     */
+    public DMXFrame() {
+	super();
+    }
+
+    /**
+     * Copy the contents of another frame into this one.
+     * 
+     * @param source
+     *                The frame to copy.
+     */
+    public void copyFrom(final DMXFrame source) {
+	startCode = source.startCode;
+	length = source.length;
+	sequence = source.sequence;
+	patch = source.patch;
+	if (patch) {
+	    patchChannels.copyFrom(source.patchChannels);
+	    for (int c = patchChannels.next(1); c != -1; c = patchChannels
+		    .next(c + 1)) {
+		data[c - 1] = source.data[c - 1];
+	    }
+	} else {
+	    System.arraycopy(source.data, 0, data, 0, source.length);
+	}
+    }
+
+    /**
+     * Check whether this frame is a patch, holding values for only some of
+     * its channels.
+     * 
+     * @return True if the frame is a patch.
+     */
+    public boolean isPatch() {
+	return patch;
+    }
+
+    /**
+     * Make this frame a full frame, or an empty patch. A patch always has a
+     * length of 512, so that any channel may be patched.
+     * 
+     * @param patch
+     *                True to start a new, empty, patch.
+     */
+    public void setPatch(final boolean patch) {
+	this.patch = patch;
+	patchChannels.clear();
+	if (patch) {
+	    length = MAX_SLOTS;
+	}
+    }
+
+    /**
+     * Set the value of a single channel within this patch. Patching the same
+     * channel again replaces its value.
+     * 
+     * @param channelNumber
+     *                The channel number, from 1 to 512.
+     * @param channelValue
+     *                The value of the channel, from 0 to 255.
+     */
+    public void patchValue(final int channelNumber, final int channelValue) {
+	data[channelNumber - 1] = (byte) channelValue;
+	patchChannels.add(channelNumber);
+    }
+
+    /**
+     * Get the channels held by this patch.
+     * 
+     * @return The set of patched channels, which is not copied.
+     */
+    public ChannelSet getPatchChannels() {
+	return patchChannels;
+    }
+
+    /**
+     * Check that the frame describes something that can be applied to a
+     * Universe, namely a start code between 0 and 255 and a length between 1
+     * and 512 inclusive.
+     * 
+     * @return True if the frame is well formed.
+     */
+    public boolean isValid() {
+	return (startCode >= 0) && (startCode <= 0xFF) && (length >= 1)
+		&& (length <= MAX_SLOTS);
+    }
+
+    /**
+     * Get the start code of this frame.
+     * 
+     * @return The start code, which is 0 for dimmer level data.
+     */
+    public int getStartCode() {
+	return startCode;
+    }
+
+    /**
+     * Set the start code of this frame.
+     * 
+     * @param startCode
+     *                The start code to set.
+     */
+    public void setStartCode(final int startCode) {
+	this.startCode = startCode;
+    }
+
+    /**
+     * Get the number of channel slots held by this frame.
+     * 
+     * @return The length of the frame.
+     */
+    public int getLength() {
+	return length;
+    }
+
+    /**
+     * Set the number of channel slots held by this frame.
+     * 
+     * @param length
+     *                The length of the frame, from 1 to 512 inclusive.
+     */
+    public void setLength(final int length) {
+	this.length = length;
+    }
+
+    /**
+     * Get the sequence number assigned to this frame by its producer.
+     * 
+     * @return The sequence number.
+     */
+    public int getSequence() {
+	return sequence;
+    }
+
+    /**
+     * Set the sequence number of this frame.
+     * 
+     * @param sequence
+     *                The sequence number to set.
+     */
+    public void setSequence(final int sequence) {
+	this.sequence = sequence;
+    }
+
+    /**
+     * Get the array backing this frame's channel slots, with channel 1 at
+     * index 0. Values are unsigned and should be read with
+     * <code>& 0xFF</code>.
+     * 
+     * @return The backing array, which is not copied.
+     */
+    public byte[] getData() {
+	return data;
+    }
+
+    /**
+     * Get the value of a single channel within this frame.
+     * 
+     * @param channelNumber
+     *                The channel number, from 1 to the frame length.
+     * @return The value of the channel, from 0 to 255.
+     */
+    public int getValue(final int channelNumber) {
+	return data[channelNumber - 1] & 0xFF;
+    }
+
+    /**
+     * Set the value of a single channel within this frame.
+     * 
+     * @param channelNumber
+     *                The channel number, from 1 to 512.
+     * @param channelValue
+     *                The value of the channel, from 0 to 255.
+     */
+    public void setValue(final int channelNumber, final int channelValue) {
+	data[channelNumber - 1] = (byte) channelValue;
+    }
+}
@@ -19,71 +19,200 @@
  */
 package dmxeffects.dmx;
 
-import com.trolltech.qt.core.QObject;
+/**
+ * Listener which drains frames from the InputQueues of a group of Universes,
+ * merging the frames from each Universe's sources and applying the result to
+ * the Universe as a single unit. The UniverseRegistry runs one DMXInput per
+ * processor core, sharing the Universes between them.
+ * 
+ * Every frame carries its own start code, length and sequence number, so the
+ * channel a value belongs to never depends on how many values have been seen
+ * before it. A lost, short or malformed frame therefore only affects that
+ * frame, and the stream is back in step at the next frame boundary.
+ * 
+ * @author chris
+ */
+public class DMXInput implements Runnable, Drainable {
+
+    /**
+     * The Universes drained by this listener. Replaced, never modified, when
+     * a Universe is added so the listener thread can read it without locks.
+     */
+    private transient volatile Universe[] universes = new Universe[0];
 
-public class DMXInput extends QObject implements Runnable {
+    private final transient WaitStrategy waitStrategy;
 
-    public Signal2<Integer, Integer> inputValue = new Signal2<Integer, Integer>();
+    // -- Statistics, written only by the listener thread -- //
+    private transient volatile long framesReceived = 0;
 
-    public Signal0 listenerStarted = new Signal0();
+    private transient volatile long framesLost = 0;
+
+    private transient volatile long framesDropped = 0;
 
     /**
      * Creates a new instance of DMXInput
      * 
+     * @param waitStrategy
+     *                The WaitStrategy used while all of the queues are
+     *                empty. It is shared by the queue of every Universe
+     *                added to this listener.
      */
-    public DMXInput() {
+    public DMXInput(final WaitStrategy waitStrategy) {
+	super();
+	this.waitStrategy = waitStrategy;
     }
 
     /**
-     * Method invoked when this method is run by a QThread
+     * Add a Universe to those drained by this listener.
+     * 
+     * @param universe
+     *                The Universe to add.
+     */
+    public synchronized void addUniverse(final Universe universe) {
+	universe.getMergeEngine().setWaitStrategy(waitStrategy);
+	final Universe[] current = universes;
+	final Universe[] replacement = new Universe[current.length + 1];
+	System.arraycopy(current, 0, replacement, 0, current.length);
+	replacement[current.length] = universe;
+	universes = replacement;
+	// Wake the listener in case it is waiting on the old set of queues
+	waitStrategy.signal();
+    }
+
+    /**
+     * Method invoked when the listener thread started by the UniverseRegistry
+     * is run.
      */
     public void run() {
-	// Inform listening QObjects that this thread has commenced operation
-	listenerStarted.emit();
+	final DMXFrame frame = new DMXFrame();
 	while (true) {
 	    /*
-	     * Here we read in data from the InputQueue, inserting it into
-	     * the data structure as appropriate. This assumes that we
-	     * recieve all 512 channels of data at once, which may not
-	     * always be true due to the protocol specification. However in
-	     * the majority of cases it will be.
+	     * Here we read in whole frames from each source's InputQueue in
+	     * turn, merging them and then applying the result to the Universe
+	     * in one go.
 	     * 
-	     * We must also consider situations where no data is being
-	     * recieved. To allow for this, 88 microseconds should be waited
-	     * between polling for data, due to the specification of the
-	     * protocol.
+	     * While no data is being recieved the thread waits according to
+	     * the WaitStrategy, rather than polling on a timer.
 	     */
-	    Integer dataPeek = InputQueue.getInstance().peek();
-	    while (dataPeek == null) {
+	    boolean drained = false;
+	    final Universe[] current = universes;
+	    for (int i = 0; i < current.length; i++) {
+		final MergeEngine merge = current[i].getMergeEngine();
+		boolean changed = merge.recomputeIfNeeded();
+		final MergeSource[] sources = merge.getSources();
+		for (int s = 0; s < sources.length; s++) {
+		    final InputQueue queue = sources[s].getInputQueue();
+		    while (queue.poll(frame)) {
+			drained = true;
+			if (accept(queue, frame)) {
+			    changed |= merge.update(sources[s], frame);
+			}
+		    }
+		}
+		if (changed) {
+		    apply(current[i], merge);
+		}
+	    }
+	    if (!drained) {
 		try {
-		    Thread.sleep((long) 0, 88000);
+		    waitStrategy.waitFor(this);
 		} catch (java.lang.InterruptedException e) {
 		    System.err.println("Thread interruption detected");
-		    e.printStackTrace(System.err);
+		    return;
 		}
-		dataPeek = InputQueue.getInstance().peek();
 	    }
-	    for (int i = 1; i < 513; i++) {
-		dataPeek = InputQueue.getInstance().peek();
-		while (dataPeek == null) {
-		    /*
-		     * It appears that the break in the data was longer than
-		     * anticipated. The protocol indicates that this break
-		     * could last for up to one second, therefore a sleep
-		     * for 100 microseconds should be performed.
-		     */
-		    try {
-			Thread.sleep((long) 0, 10000);
-		    } catch (java.lang.InterruptedException e) {
-			System.err.println("Thread interruption detected");
-			e.printStackTrace(System.err);
-		    }
-		    dataPeek = InputQueue.getInstance().peek();
-		}
-		// Send a signal indicating the new value
-		inputValue
-			.emit(new Integer(i), InputQueue.getInstance().poll());
+	}
+    }
+
+    /**
+     * Check a frame taken from a queue, deciding whether it should be
+     * merged.
+     * 
+     * @return True if the frame holds valid level data.
+     */
+    private boolean accept(final InputQueue queue, final DMXFrame frame) {
+	framesReceived++;
+
+	// Note any frames that never arrived. Later frames are unaffected.
+	framesLost += queue.checkSequence(frame.getSequence());
+
+	if (!frame.isValid()) {
+	    // Corrupt frame, resynchronise on the next one.
+	    framesDropped++;
+	    return false;
+	}
+	// Frames with alternate start codes do not carry level data.
+	return frame.getStartCode() == DMXFrame.NULL_START_CODE;
+    }
+
+    /**
+     * Apply the merged channels which may have changed to their Universe.
+     */
+    private void apply(final Universe universe, final MergeEngine merge) {
+	try {
+	    if (merge.isAllDirty()) {
+		universe.setFrame(merge.getOutput());
+	    } else {
+		universe.setChannels(merge.getOutput(), merge
+			.getDirtyChannels());
+	    }
+	} catch (InvalidChannelNumberException ICNE) {
+	    // Should not occur as the merged frame is always full length
+	    ICNE.printStackTrace(System.err);
+	}
+	merge.clearDirty();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see dmxeffects.dmx.Drainable#isEmpty()
+     */
+    public boolean isEmpty() {
+	final Universe[] current = universes;
+	for (int i = 0; i < current.length; i++) {
+	    if (!current[i].getMergeEngine().isEmpty()) {
+		return false;
 	    }
 	}
+	return true;
+    }
+
+    /**
+     * Get the number of Universes drained by this listener.
+     * 
+     * @return The number of Universes.
+     */
+    public int getUniverseCount() {
+	return universes.length;
+    }
+
+    /**
+     * Get the number of frames taken from the InputQueues.
+     * 
+     * @return The number of frames received.
+     */
+    public long getFramesReceived() {
+	return framesReceived;
+    }
+
+    /**
+     * Get the number of frames that were skipped in the sequence, having
+     * never reached this listener.
+     * 
+     * @return The number of frames lost.
+     */
+    public long getFramesLost() {
+	return framesLost;
+    }
+
+    /**
+     * Get the number of frames that arrived but were malformed, and so were
+     * discarded.
+     * 
+     * @return The number of frames dropped.
+     */
+    public long getFramesDropped() {
+	return framesDropped;
     }
 }
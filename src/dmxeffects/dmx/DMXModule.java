@@ -20,11 +20,10 @@
 package dmxeffects.dmx;
 
 import com.trolltech.qt.core.QObject;
-import com.trolltech.qt.core.Qt.ItemFlag;
 import com.trolltech.qt.gui.QAction;
 import com.trolltech.qt.gui.QMenu;
-import com.trolltech.qt.gui.QTableWidget;
-import com.trolltech.qt.gui.QTableWidgetItem;
+import com.trolltech.qt.gui.QMessageBox;
+import com.trolltech.qt.gui.QTableView;
 import com.trolltech.qt.gui.QWidget;
 
 import dmxeffects.Module;
@@ -49,9 +48,14 @@ public class DMXModule extends QObject implements Module {
 
     private final String WIDGET_TITLE = tr("DMX Association Table");
 
+    // Frames per second sent to the Universe by a load test
+    private static final double LOAD_RATE = 44;
+
+    private UniverseRegistry registry;
+
     private Universe universe;
 
-    private DMXInput input;
+    private UniverseSignals universeSignals;
 
     private boolean dmxListener = false;
 
@@ -68,20 +72,25 @@ public class DMXModule extends QObject implements Module {
 
     private QAction injectAction;
 
+    private QAction startLoadAction;
+
+    private QAction stopLoadAction;
+
     private QAction setAssocAction;
 
-    private QTableWidget dmxTable;
+    private QTableView dmxTable;
+
+    private UniverseTableModel tableModel;
 
     /**
      * Instantiate a new instance of this class.
      */
     public DMXModule() {
 	super();
-	// Create input object
-	input = new DMXInput();
-
-	// Initialise Universe
-	universe = new Universe();
+	// Initialise Universes, starting with the default one
+	registry = new UniverseRegistry();
+	universe = registry.createUniverse(Universe.DEFAULT_UNIVERSE);
+	universeSignals = new UniverseSignals(universe);
 
 	// Prepare actions
 	listenerAction = new QAction(tr("&Start DMX Listener"), this);
@@ -102,6 +111,16 @@ public class DMXModule extends QObject implements Module {
 	channelAction.triggered.connect(this, "generate()");
 	channelAction.setEnabled(dmxListener);
 
+	startLoadAction = new QAction(tr("Start &load test"), this);
+	startLoadAction.setStatusTip(tr("Send random frames continuously"));
+	startLoadAction.triggered.connect(this, "startLoad()");
+	startLoadAction.setEnabled(dmxListener);
+
+	stopLoadAction = new QAction(tr("Stop load &test"), this);
+	stopLoadAction.setStatusTip(tr("Stop sending random frames"));
+	stopLoadAction.triggered.connect(this, "stopLoad()");
+	stopLoadAction.setEnabled(false);
+
 	injectAction = new QAction(tr("&Inject DMX"), this);
 	injectAction.setStatusTip(tr("Inject specific DMX data"));
 	injectAction.triggered.connect(this, "inject()");
@@ -120,45 +139,31 @@ public class DMXModule extends QObject implements Module {
 	generateMenu.setEnabled(dmxListener);
 	generateMenu.addAction(randomAction);
 	generateMenu.addAction(channelAction);
+	generateMenu.addSeparator();
+	generateMenu.addAction(startLoadAction);
+	generateMenu.addAction(stopLoadAction);
 
 	menu.addMenu(generateMenu);
 	menu.addAction(injectAction);
 	menu.addAction(setAssocAction);
 
 	// Initialise Table
-	dmxTable = new QTableWidget(512, 3);
+	tableModel = new UniverseTableModel(universe);
+	dmxTable = new QTableView();
+	dmxTable.setModel(tableModel);
 	dmxTable.setAcceptDrops(false);
 	dmxTable.setAlternatingRowColors(true);
 	dmxTable.setDragEnabled(false);
 	dmxTable.setVisible(true);
-	dmxTable.setHorizontalHeaderItem(0, new QTableWidgetItem(
-		tr("DMX Channel")));
-	dmxTable.setHorizontalHeaderItem(1, new QTableWidgetItem(
-		tr("Current Value")));
-	dmxTable.setHorizontalHeaderItem(2, new QTableWidgetItem(
-		tr("Associated Element")));
-	for (int i = 0; i < 512; i++) {
-	    // Number the rows
-	    dmxTable.setItem(i, 0, new QTableWidgetItem(tr(String
-		    .valueOf(i + 1))));
-
-	    // Initialise the DMX values to 0
-	    dmxTable.setItem(i, 1, new QTableWidgetItem(tr(String.valueOf(0))));
-
-	    // Cannot do anything other than select these cells.
-	    dmxTable.item(i, 0).setFlags(ItemFlag.ItemIsSelectable);
-	    dmxTable.item(i, 1).setFlags(ItemFlag.ItemIsSelectable);
-	}
-	// Listen for edits to cells
-	dmxTable.cellChanged.connect(this, "assocEdited(Integer, Integer)");
+	// Listen for edits to associations
+	tableModel.associationEdited.connect(this,
+		"assocEdited(Integer, String)");
 
 	// Connect to external signals
-	universe.dmxValueUpdater.connect(this,
-		"updateTableVal(Integer, Integer)");
-	universe.assocRemUpdater.connect(this,
-		"displayRemove(Integer, Integer)");
-	universe.associationUpdater.connect(this,
-		"updateTableAssoc(Integer, String)");
+	universeSignals.assocRemUpdater.connect(tableModel,
+		"associationsRemoved(Integer, Integer)");
+	universeSignals.associationUpdater.connect(tableModel,
+		"associationChanged(Integer, Integer, String)");
 
     }
 
@@ -183,6 +188,7 @@ public class DMXModule extends QObject implements Module {
 	generateMenu.setEnabled(true);
 	randomAction.setEnabled(true);
 	channelAction.setEnabled(true);
+	startLoadAction.setEnabled(Generator.getInstance().getLoad() == null);
 	injectAction.setEnabled(true);
 
 	// Transmit the signal
@@ -190,52 +196,32 @@ public class DMXModule extends QObject implements Module {
     }
 
     /**
-     * Set the DMXInput Thread running, listening to the appropriate signal.
+     * Set the DMXInput Threads running for all of the Universes.
      */
     public void startListener() {
-	final Thread listenerThread = new Thread(input);
-	input.inputValue.connect(universe, "setValue(Integer, Integer)");
-	input.listenerStarted.connect(this, "dmxListenerEnabled()");
-	input.moveToThread(listenerThread);
-	listenerThread.setDaemon(true);
-
-	listenerThread.start();
+	registry.start();
+	dmxListenerEnabled();
     }
 
     /**
-     * Update a value for a specific channel within the DMX table.
-     * 
-     * @param channelNumber
-     *                The channel to update.
-     * @param channelValue
-     *                The new value.
+     * Start a load test, sending random frames to the Universe at a fixed
+     * rate until stopped.
      */
-    public void updateTableVal(final Integer channelNumber,
-	    final Integer channelValue) {
-	synchronized (dmxTable) {
-	    dmxTable.setItem(channelNumber.intValue() - 1, 1,
-		    new QTableWidgetItem(tr(channelValue.toString())));
-	    dmxTable.item(channelNumber.intValue() - 1, 1).setFlags(
-		    ItemFlag.ItemIsSelectable);
-	}
+    public void startLoad() {
+	Generator.getInstance().startLoad(registry,
+		universe.getUniverseNumber(), 1, LoadGenerator.RANDOM_PATTERN,
+		LOAD_RATE, null);
+	startLoadAction.setEnabled(false);
+	stopLoadAction.setEnabled(true);
     }
 
     /**
-     * Update an association for a specific channel within the DMX table.
-     * 
-     * @param channelNumber
-     *                The channel to update.
-     * @param association
-     *                The new association.
+     * Stop the load test.
      */
-    public void updateTableAssoc(final Integer channelNumber,
-	    final String association) {
-	synchronized (dmxTable) {
-	    dmxTable.setItem(channelNumber.intValue(), 2, new QTableWidgetItem(
-		    tr(association)));
-	    dmxTable.item(channelNumber.intValue(), 2).setFlags(
-		    ItemFlag.ItemIsSelectable);
-	}
+    public void stopLoad() {
+	Generator.getInstance().stopLoad();
+	startLoadAction.setEnabled(true);
+	stopLoadAction.setEnabled(false);
     }
 
     /**
@@ -285,72 +271,55 @@ public class DMXModule extends QObject implements Module {
     }
 
     /**
-     * Display the range of channels that have associations removed.
+     * Handle the user's edit of the association of a channel, seeking
+     * confirmation before replacing an existing association.
      * 
      * @param channelNumber
-     *                Integer representation of the first channel removed.
-     * @param numToDelete
-     *                Integer representation of the size of removed range.
+     *                Channel edited.
+     * @param association
+     *                The new association.
      */
-    public void displayRemove(final Integer channelNumber,
-	    final Integer numToDelete) {
-	synchronized (dmxTable) {
-	    int start = channelNumber.intValue();
-	    int finish = start + numToDelete.intValue();
-	    for (int i = start; i < finish; i++) {
-		dmxTable.setItem(i, 2, new QTableWidgetItem(""));
-		dmxTable.item(i, 2).setFlags(
-			new ItemFlag[] { ItemFlag.ItemIsEditable,
-				ItemFlag.ItemIsSelectable });
+    public void assocEdited(final Integer channelNumber,
+	    final String association) {
+	try {
+	    if ((universe.getAssociation(channelNumber.intValue()) == null)
+		    || confirmRemove(channelNumber.intValue(), 1)) {
+		universe.setAssociation(channelNumber.intValue(), association);
 	    }
+	} catch (InvalidChannelNumberException ICNE) {
+	    // Hmm, strange.
+	    ICNE.printStackTrace(System.err);
 	}
     }
 
     /**
-     * Handle edits to specific cells within the table, which should only be
-     * of associations.
+     * Confirm that the user wishes to delete the associations of a range of
+     * channels.
      * 
-     * @param row
-     *                Row changed.
-     * @param column
-     *                Column changed, this should always be 2.
+     * @param channelNumber
+     *                The first channel of the range.
+     * @param numToDelete
+     *                The number of channels in the range.
+     * @return True if the user confirmed the deletion.
      */
-    public void assocEdited(Integer row, Integer column) {
-	if (column.intValue() == 0) {
-	    // Reset to the correct value and lock out edits
-	    synchronized (dmxTable) {
-		dmxTable.setItem(row.intValue(), 0, new QTableWidgetItem(
-			tr(String.valueOf(row.intValue() + 1))));
-		dmxTable.item(row.intValue(), 0).setFlags(
-			ItemFlag.ItemIsSelectable);
-	    }
-	}
-	if (column.intValue() == 1) {
-	    // Reset to the correct value and lock out edits
-	    synchronized (dmxTable) {
-		dmxTable.setItem(row.intValue(), 1, new QTableWidgetItem());
-		dmxTable.item(row.intValue(), 1).setFlags(
-			ItemFlag.ItemIsSelectable);
-	    }
-	}
-	if (column.intValue() == 2) {
-	    // Only handle updates to associations.
-	    synchronized (dmxTable) {
-		// Extract the new data, store it in the universe, and lock the
-		// cell
-		try {
-		    universe.setAssociation(row.intValue() + 1, dmxTable.item(
-			    row.intValue(), 1).text());
-		} catch (OperationCancelledException OCE) {
-		    // Nevermind.
-		} catch (InvalidChannelNumberException ICNE) {
-		    // Hmm, strange.
-		    ICNE.printStackTrace(System.err);
-		}
-		dmxTable.item(row.intValue(), 1).setFlags(
-			ItemFlag.ItemIsSelectable);
-	    }
+    public boolean confirmRemove(final int channelNumber, final int numToDelete) {
+	String confirmMessage;
+	if (numToDelete > 1) {
+	    confirmMessage = "Please confirm that you wish to delete the "
+		    + "associations for channels between "
+		    + String.valueOf(channelNumber) + " and "
+		    + String.valueOf(channelNumber + numToDelete) + ".";
+	} else {
+	    confirmMessage = "Please confirm that you wish to delete the "
+		    + "association for channel "
+		    + String.valueOf(channelNumber) + ".";
 	}
+	QMessageBox.StandardButtons options = new QMessageBox.StandardButtons(
+		QMessageBox.StandardButton.Yes, QMessageBox.StandardButton.No);
+	QMessageBox.StandardButton response = QMessageBox.question(getWidget(),
+		"Confirm deletion", confirmMessage, options,
+		QMessageBox.StandardButton.Yes);
+	return response.equals(QMessageBox.StandardButton.Yes);
     }
 
     public String getName() {
@@ -358,8 +327,7 @@ public class DMXModule extends QObject implements Module {
     }
 
     public QWidget getWidget() {
-	// TODO Auto-generated method stub
-	return null;
+	return dmxTable;
     }
 
     public String getWidgetTitle() {
@@ -370,6 +338,18 @@ public class DMXModule extends QObject implements Module {
 	return universe;
     }
 
+    public UniverseSignals getUniverseSignals() {
+	return universeSignals;
+    }
+
+    public UniverseTableModel getTableModel() {
+	return tableModel;
+    }
+
+    public UniverseRegistry getUniverseRegistry() {
+	return registry;
+    }
+
     public boolean getListenerStatus() {
 	return dmxListener;
     }
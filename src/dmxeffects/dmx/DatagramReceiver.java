@@ -0,0 +1,284 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.dmx;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+import dmxeffects.OperationFailedException;
+
+/**
+ * Base class for network inputs which receive DMX over UDP and feed it to the
+ * Universes of a UniverseRegistry.
+ * 
+ * Packets are read by a single thread from a non-blocking DatagramChannel
+ * into one reused direct buffer and handed to the subclass to be parsed in
+ * place, so nothing need be allocated per packet. The receiver adds its own
+ * MergeSource to each Universe it feeds, the first time it feeds it, so its
+ * input is merged with that of any other sources.
+ * 
+ * @author chris
+ */
+public abstract class DatagramReceiver implements Runnable {
+
+    private static final long SELECT_TIMEOUT = 250L;
+
+    protected final transient UniverseRegistry registry;
+
+    protected final transient DMXFrame frame = new DMXFrame();
+
+    private final transient ByteBuffer buffer;
+
+    private final transient String name;
+
+    protected transient DatagramChannel channel;
+
+    private transient Selector selector;
+
+    private transient volatile boolean running = false;
+
+    // This receiver's source within each Universe, indexed by number
+    private final transient MergeSource[] sources = new MergeSource[UniverseRegistry.MAX_UNIVERSE + 1];
+
+    // -- Statistics, written only by the receiver thread -- //
+    protected transient volatile long packetsReceived = 0;
+
+    protected transient volatile long packetsIgnored = 0;
+
+    protected transient volatile long framesDropped = 0;
+
+    /**
+     * Create a new instance of this class.
+     * 
+     * @param registry
+     *                The registry holding the Universes to feed.
+     * @param name
+     *                Name of the protocol received, used for the thread
+     *                name and in messages.
+     * @param bufferSize
+     *                Size of the largest packet worth reading.
+     */
+    protected DatagramReceiver(final UniverseRegistry registry,
+	    final String name, final int bufferSize) {
+	super();
+	this.registry = registry;
+	this.name = name;
+	buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * Open the channel, bound to the given address. Use port 0 to bind to
+     * any free port, which is useful when testing on loopback.
+     * 
+     * @param address
+     *                The local address to receive on.
+     * @throws OperationFailedException
+     *                 The channel could not be opened.
+     */
+    public void bind(final InetSocketAddress address)
+	    throws OperationFailedException {
+	try {
+	    channel = DatagramChannel.open(StandardProtocolFamily.INET);
+	    channel.socket().setReuseAddress(true);
+	    channel.socket().bind(address);
+	    channel.configureBlocking(false);
+	    selector = Selector.open();
+	    channel.register(selector, SelectionKey.OP_READ);
+	} catch (IOException IOE) {
+	    close();
+	    throw new OperationFailedException("Unable to receive " + name
+		    + " on " + address + ": " + IOE.getMessage());
+	}
+    }
+
+    /**
+     * Get the address the channel is bound to.
+     * 
+     * @return The local address, or null if not bound.
+     */
+    public InetSocketAddress getLocalAddress() {
+	if (channel == null) {
+	    return null;
+	}
+	return (InetSocketAddress) channel.socket().getLocalSocketAddress();
+    }
+
+    /**
+     * Start receiving on a new daemon thread. The channel must have been
+     * bound first.
+     */
+    public void start() {
+	if (channel == null) {
+	    throw new IllegalStateException(name + " receiver is not bound.");
+	}
+	running = true;
+	final Thread receiverThread = new Thread(this, name + " Receiver");
+	receiverThread.setDaemon(true);
+	receiverThread.start();
+    }
+
+    /**
+     * Stop receiving. The receiver thread closes the channel as it exits.
+     */
+    public void stop() {
+	running = false;
+	if (selector != null) {
+	    selector.wakeup();
+	}
+    }
+
+    /**
+     * Method invoked when the receiver thread is started.
+     */
+    public void run() {
+	try {
+	    while (running) {
+		if (selector.select(SELECT_TIMEOUT) > 0) {
+		    selector.selectedKeys().clear();
+		}
+		// Drain everything waiting before selecting again
+		buffer.clear();
+		while (channel.receive(buffer) != null) {
+		    buffer.flip();
+		    packetsReceived++;
+		    handlePacket(buffer);
+		    buffer.clear();
+		}
+		tick();
+	    }
+	} catch (IOException IOE) {
+	    System.err.println(name + " receiver stopped: " + IOE.getMessage());
+	} finally {
+	    close();
+	}
+    }
+
+    /**
+     * Parse a packet in place and pass any DMX it holds to the matching
+     * Universe. Called only from the receiver thread.
+     * 
+     * @param packet
+     *                Buffer holding the packet between its position and
+     *                limit. It is reused once this returns.
+     */
+    protected abstract void handlePacket(ByteBuffer packet);
+
+    /**
+     * Perform any periodic housekeeping. Called from the receiver thread
+     * after each batch of packets, and at least every 250 milliseconds.
+     */
+    protected void tick() {
+	// Nothing to do by default
+    }
+
+    /**
+     * Get this receiver's source within a Universe, adding one if needed.
+     * 
+     * @param universe
+     *                The Universe fed by this receiver.
+     * @return The MergeSource for this receiver.
+     */
+    protected MergeSource getSource(final Universe universe) {
+	final int universeNumber = universe.getUniverseNumber();
+	MergeSource source = sources[universeNumber];
+	if ((source == null) || source.isRemoved()) {
+	    source = universe.getMergeEngine().addSource(name,
+		    MergeSource.DEFAULT_PRIORITY);
+	    sources[universeNumber] = source;
+	}
+	return source;
+    }
+
+    /**
+     * Remove this receiver's source from a Universe, so that its last levels
+     * no longer contribute to the merge. A new source is added the next time
+     * the Universe is fed.
+     * 
+     * @param universe
+     *                The Universe no longer fed by this receiver.
+     */
+    protected void releaseSource(final Universe universe) {
+	final int universeNumber = universe.getUniverseNumber();
+	final MergeSource source = sources[universeNumber];
+	if (source != null) {
+	    sources[universeNumber] = null;
+	    universe.getMergeEngine().removeSource(source);
+	}
+    }
+
+    /**
+     * Offer the reused frame, once filled in, to a Universe.
+     * 
+     * @param universe
+     *                The Universe to feed.
+     */
+    protected void offerFrame(final Universe universe) {
+	if (!getSource(universe).getInputQueue().offer(frame)) {
+	    framesDropped++;
+	}
+    }
+
+    private void close() {
+	try {
+	    if (selector != null) {
+		selector.close();
+	    }
+	    if (channel != null) {
+		channel.close();
+	    }
+	} catch (IOException IOE) {
+	    IOE.printStackTrace(System.err);
+	}
+    }
+
+    /**
+     * Get the number of packets read from the network.
+     * 
+     * @return The number of packets received.
+     */
+    public long getPacketsReceived() {
+	return packetsReceived;
+    }
+
+    /**
+     * Get the number of packets which did not carry usable DMX for a known
+     * Universe, and so were ignored.
+     * 
+     * @return The number of packets ignored.
+     */
+    public long getPacketsIgnored() {
+	return packetsIgnored;
+    }
+
+    /**
+     * Get the number of frames lost because a Universe's InputQueue was
+     * full.
+     * 
+     * @return The number of frames dropped.
+     */
+    public long getFramesDropped() {
+	return framesDropped;
+    }
+}
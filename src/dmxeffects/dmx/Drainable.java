@@ -0,0 +1,36 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.dmx;
+
+/**
+ * Interface for anything the DMX listener waits upon for frames to arrive,
+ * whether a single InputQueue or a DMXInput draining several of them.
+ * 
+ * @author chris
+ */
+public interface Drainable {
+
+    /**
+     * Check whether there are no frames waiting to be drained.
+     * 
+     * @return True if no frames are waiting.
+     */
+    boolean isEmpty();
+}
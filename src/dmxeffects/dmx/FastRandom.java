@@ -0,0 +1,93 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.dmx;
+
+/**
+ * Small, fast pseudo random number generator (xorshift64*) for producing test
+ * DMX data. It is not thread safe, so each thread should have its own, and it
+ * is not suitable for anything needing good quality randomness.
+ * 
+ * @author chris
+ */
+public class FastRandom {
+
+    private transient long state;
+
+    /**
+     * Creates a new instance of FastRandom seeded from the clock.
+     */
+    public FastRandom() {
+	this(System.nanoTime());
+    }
+
+    /**
+     * Creates a new instance of FastRandom
+     * 
+     * @param seed
+     *                The seed. Any value, including zero, may be used.
+     */
+    public FastRandom(final long seed) {
+	super();
+	// Zero is the one state xorshift cannot leave, so mix it away
+	state = (seed == 0) ? 0x9E3779B97F4A7C15L : seed;
+    }
+
+    /**
+     * Get the next 64 random bits.
+     * 
+     * @return A random long.
+     */
+    public long nextLong() {
+	long x = state;
+	x ^= x >>> 12;
+	x ^= x << 25;
+	x ^= x >>> 27;
+	state = x;
+	return x * 0x2545F4914F6CDD1DL;
+    }
+
+    /**
+     * Get a random channel value, from 0 to 255 inclusive.
+     * 
+     * @return A random channel value.
+     */
+    public int nextValue() {
+	return (int) (nextLong() >>> 56);
+    }
+
+    /**
+     * Fill the start of an array with random bytes, eight at a time.
+     * 
+     * @param data
+     *                The array to fill.
+     * @param length
+     *                The number of bytes to fill.
+     */
+    public void nextBytes(final byte[] data, final int length) {
+	int i = 0;
+	while (i < length) {
+	    long bits = nextLong();
+	    for (int b = 0; (b < 8) && (i < length); b++) {
+		data[i++] = (byte) bits;
+		bits >>>= 8;
+	    }
+	}
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.dmx;
+
+/**
+ * Read-only record of a frame applied to a Universe. It holds the value of all
+ * 512 channels after the frame was applied, along with the set of channels
+ * whose value changed, so that a listener can handle a whole frame in a single
+ * call. A Universe reuses one FrameUpdate for every frame it reports, so a
+ * listener wishing to keep one should take a copy.
+ * 
+ * @author chris
+ */
+public class FrameUpdate {
+
+    private final transient byte[] values = new byte[DMXFrame.MAX_SLOTS];
+
+    private final transient ChannelSet changed = new ChannelSet();
+
+    /**
+     * Creates a new, empty, instance of FrameUpdate, to be filled by set.
+     */
+    FrameUpdate() {
+	super();
+    }
+
+    /**
+     * Creates a new instance of FrameUpdate, copying the data provided.
+     * 
+     * @param dmxValues
+     *                The values of the 512 channels of the Universe,
+     *                unsigned.
+     * @param changedChannels
+     *                The channels which changed.
+     */
+    public FrameUpdate(final byte[] dmxValues,
+	    final ChannelSet changedChannels) {
+	super();
+	set(dmxValues, changedChannels);
+    }
+
+    /**
+     * Creates a new instance of FrameUpdate, copying another.
+     * 
+     * @param source
+     *                The FrameUpdate to copy.
+     */
+    public FrameUpdate(final FrameUpdate source) {
+	this(source.values, source.changed);
+    }
+
+    /**
+     * Replace the contents with a copy of the data provided, without
+     * allocating.
+     */
+    void set(final byte[] dmxValues, final ChannelSet changedChannels) {
+	System.arraycopy(dmxValues, 0, values, 0, DMXFrame.MAX_SLOTS);
+	changed.copyFrom(changedChannels);
+    }
+
+    /**
+     * Copy the values of a range of channels.
+     * 
+     * @param firstChannel
+     *                The first channel number, from 1 to 512.
+     * @param dest
+     *                The array to copy into, unsigned.
+     * @param offset
+     *                The index in dest of the first channel's value.
+     * @param count
+     *                The number of channels to copy.
+     */
+    public void copyValues(final int firstChannel, final byte[] dest,
+	    final int offset, final int count) {
+	System.arraycopy(values, firstChannel - 1, dest, offset, count);
+    }
+
+    /**
+     * Get the value of a channel.
+     * 
+     * @param channelNumber
+     *                The channel number, from 1 to 512.
+     * @return The value of the channel, from 0 to 255.
+     */
+    public int getValue(final int channelNumber) {
+	return values[channelNumber - 1] & 0xFF;
+    }
+
+    /**
+     * Check whether a channel changed.
+     * 
+     * @param channelNumber
+     *                The channel number, from 1 to 512.
+     * @return True if the channel's value changed.
+     */
+    public boolean isChanged(final int channelNumber) {
+	return changed.contains(channelNumber);
+    }
+
+    /**
+     * Find the first changed channel at or after a given channel. Iterate
+     * over all changed channels with:
+     * 
+     * <pre>
+     * for (int c = update.nextChanged(1); c != -1; c = update.nextChanged(c + 1))
+     * </pre>
+     * 
+     * @param channelNumber
+     *                The channel number to start from, from 1 to 512.
+     * @return The next changed channel, or -1 if there are none.
+     */
+    public int nextChanged(final int channelNumber) {
+	return changed.next(channelNumber);
+    }
+
+    /**
+     * Get the number of channels which changed.
+     * 
+     * @return The number of changed channels.
+     */
+    public int getChangedCount() {
+	return changed.size();
+    }
+}
@@ -19,8 +19,6 @@
  */
 package dmxeffects.dmx;
 
-import java.util.Random;
-
 import dmxeffects.Main;
 
 /**
@@ -32,6 +30,18 @@ public class Generator {
 
     private static Generator singletonGen = new Generator();
 
+    // Frame assembled before being handed to the InputQueue.
+    private final transient DMXFrame frame = new DMXFrame();
+
+    // Patch of the channels changed by a single injection
+    private final transient DMXFrame patch = new DMXFrame();
+
+    private transient int sequence = 0;
+
+    private final transient FastRandom random = new FastRandom();
+
+    private transient LoadGenerator load = null;
+
     /** Creates a new instance of Generator */
     private Generator() {
     }
@@ -50,11 +60,16 @@ public class Generator {
      * Method to generate 512 random values and insert them into the queue.
      */
     public void generateAll() {
-	for (int i = 1; i < 513; i++) {
-	    InputQueue.getInstance().add(generateValue());
+	random.nextBytes(frame.getData(), DMXFrame.MAX_SLOTS);
+	frame.setStartCode(DMXFrame.NULL_START_CODE);
+	frame.setLength(DMXFrame.MAX_SLOTS);
+	if (queueFrame(frame)) {
+	    Main.getInstance().statusBar().showMessage("DMX values generated",
+		    2000);
+	} else {
+	    Main.getInstance().statusBar().showMessage("DMX input queue full",
+		    2000);
 	}
-	Main.getInstance().statusBar()
-		.showMessage("DMX values generated", 2000);
     }
 
     /**
@@ -73,14 +88,12 @@ public class Generator {
 	    throws InvalidChannelNumberException {
 	if (Validator.validate(channelNumber,
 		Validator.CHANNEL_NUMBER_VALIDATION)) {
-	    for (int i = 1; i < 513; i++) {
-		if (i == channelNumber) {
-		    InputQueue.getInstance().add(generateValue());
-		} else {
-		    InputQueue.getInstance().add(
-			    Main.getInstance().getDMX().getUniverse().getValue(
-				    i));
-		}
+	    patch.setPatch(true);
+	    patch.patchValue(channelNumber, generateValue());
+	    if (!queueFrame(patch)) {
+		Main.getInstance().statusBar().showMessage(
+			"DMX input queue full", 2000);
+		return;
 	    }
 	} else {
 	    final String exceptionMessage = "Specified channel number, "
@@ -115,14 +128,12 @@ public class Generator {
 		Validator.CHANNEL_NUMBER_VALIDATION)) {
 	    if (Validator.validate(channelValue,
 		    Validator.CHANNEL_VALUE_VALIDATION)) {
-		for (int i = 1; i < 513; i++) {
-		    if (i == channelNumber) {
-			InputQueue.getInstance().add(channelValue);
-		    } else {
-			InputQueue.getInstance().add(
-				Main.getInstance().getDMX().getUniverse()
-					.getValue(i));
-		    }
+		patch.setPatch(true);
+		patch.patchValue(channelNumber, channelValue);
+		if (!queueFrame(patch)) {
+		    Main.getInstance().statusBar().showMessage(
+			    "DMX input queue full", 2000);
+		    return;
 		}
 	    } else {
 		final String exceptionMessage = "Specified value, "
@@ -141,6 +152,70 @@ public class Generator {
 	Main.getInstance().statusBar().showMessage("DMX value inserted", 2000);
     }
 
+    /**
+     * Method to insert a list of values upon their channel numbers as one
+     * update, leaving the other values unchanged. Either every value is
+     * inserted, or none are. This costs only as much as the number of
+     * values, rather than a whole frame.
+     * 
+     * @param channelNumbers
+     *                The numbers of the channels to insert data upon. Each
+     *                should be between 1 and 512 inclusive.
+     * @param channelValues
+     *                The values to insert, one for each channel number. Each
+     *                should be between 0 and 255 inclusive. Where a channel
+     *                is listed more than once, the last value is used.
+     * @throws InvalidChannelNumberException
+     *                 Exception thrown indicating a channel number does not
+     *                 follow the specification.
+     * @throws InvalidChannelValueException
+     *                 Exception thrown indicating a channel value does not
+     *                 follow the specification.
+     */
+    public void inject(final int[] channelNumbers, final int[] channelValues)
+	    throws InvalidChannelNumberException, InvalidChannelValueException {
+	if (channelNumbers.length != channelValues.length) {
+	    throw new IllegalArgumentException("There are "
+		    + channelNumbers.length + " channel numbers but "
+		    + channelValues.length + " values.");
+	}
+	// Validate everything before anything is changed
+	for (int i = 0; i < channelNumbers.length; i++) {
+	    if (!Validator.validate(channelNumbers[i],
+		    Validator.CHANNEL_NUMBER_VALIDATION)) {
+		throw new InvalidChannelNumberException(channelNumbers[i]);
+	    }
+	    if (!Validator.validate(channelValues[i],
+		    Validator.CHANNEL_VALUE_VALIDATION)) {
+		throw new InvalidChannelValueException(channelValues[i]);
+	    }
+	}
+	patch.setPatch(true);
+	for (int i = 0; i < channelNumbers.length; i++) {
+	    patch.patchValue(channelNumbers[i], channelValues[i]);
+	}
+	if (queueFrame(patch)) {
+	    Main.getInstance().statusBar().showMessage("DMX values inserted",
+		    2000);
+	} else {
+	    Main.getInstance().statusBar().showMessage("DMX input queue full",
+		    2000);
+	}
+    }
+
+    /**
+     * Stamp a frame or patch with the next sequence number, and hand it to
+     * the InputQueue.
+     * 
+     * @return True if the frame was queued, false if the queue was full.
+     */
+    private boolean queueFrame(final DMXFrame toQueue) {
+	sequence++;
+	toQueue.setSequence(sequence);
+	return Main.getInstance().getDMX().getUniverse().getInputQueue().offer(
+		toQueue);
+    }
+
     /**
      * Method to generate a single channel value. This should be from 0 to
      * 255 inclusive.
@@ -148,6 +223,65 @@ public class Generator {
      * @return The value generated.
      */
     public int generateValue() {
-	return new Random().nextInt(256);
+	return random.nextValue();
+    }
+
+    /**
+     * Start generating load: frames in the given pattern sent to a range of
+     * Universes at a fixed rate. Any load already running is stopped first.
+     * Used by the load test actions of the DMX menu.
+     * 
+     * @param registry
+     *                The registry holding the Universes to feed.
+     * @param firstUniverse
+     *                The number of the first Universe to feed.
+     * @param universeCount
+     *                The number of consecutive Universes to feed. Any not
+     *                already in the registry are created.
+     * @param pattern
+     *                One of LoadGenerator.RANDOM_PATTERN, RAMP_PATTERN or
+     *                REPLAY_PATTERN.
+     * @param framesPerSecond
+     *                The number of frames to send to each Universe per
+     *                second.
+     * @param replay
+     *                Frames to replay for REPLAY_PATTERN, otherwise null.
+     * @return The running LoadGenerator, for its statistics.
+     */
+    public synchronized LoadGenerator startLoad(
+	    final UniverseRegistry registry, final int firstUniverse,
+	    final int universeCount, final int pattern,
+	    final double framesPerSecond, final DMXFrame[] replay) {
+	stopLoad();
+	final Universe[] universes = new Universe[universeCount];
+	for (int i = 0; i < universeCount; i++) {
+	    final int number = firstUniverse + i;
+	    universes[i] = registry.getUniverse(number);
+	    if (universes[i] == null) {
+		universes[i] = registry.createUniverse(number);
+	    }
+	}
+	load = new LoadGenerator(universes, pattern, framesPerSecond, replay);
+	load.start();
+	return load;
+    }
+
+    /**
+     * Stop any load started by startLoad.
+     */
+    public synchronized void stopLoad() {
+	if (load != null) {
+	    load.stop();
+	    load = null;
+	}
+    }
+
+    /**
+     * Get the load currently running.
+     * 
+     * @return The running LoadGenerator, or null if there is none.
+     */
+    public synchronized LoadGenerator getLoad() {
+	return load;
     }
 }
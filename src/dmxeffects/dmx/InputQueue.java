@@ -19,118 +19,229 @@
  */
 package dmxeffects.dmx;
 
-import java.util.LinkedList;
-import java.util.Queue;
-import java.util.concurrent.Semaphore;
-
 /**
- * Data structure to queue up input values of DMX for storage into the Universe.
+ * Data structure to queue up frames of DMX input for storage into the
+ * Universe. Each Universe owns its own InputQueue.
+ * 
+ * The queue is a fixed size ring of preallocated DMXFrame slots, shared
+ * between exactly one producer thread (such as the Generator) and one consumer
+ * thread (the DMXInput listener). No locks are taken and nothing is allocated
+ * once the queue has been created; the two threads coordinate purely through
+ * the volatile head and tail sequence counters.
+ * 
+ * How the consumer waits for frames is decided by a WaitStrategy, chosen by
+ * the <code>dmxeffects.waitStrategy</code> system property as one of
+ * "blocking" (the default), "yielding" or "spin".
  * 
  * @author chris
  */
-public class InputQueue {
+public class InputQueue implements Drainable {
+
+    /**
+     * Number of frames the queue may hold. This must be a power of two.
+     */
+    public static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * System property used to select the WaitStrategy for the queue.
+     */
+    public static final String WAIT_STRATEGY_PROPERTY = "dmxeffects.waitStrategy";
+
+    private final transient DMXFrame[] frames;
+
+    private final transient int mask;
+
+    /**
+     * Sequence of the next frame to be read. Only written by the consumer.
+     */
+    private transient volatile long head = 0;
 
-    // TODO Possibly remove singletonness due to potential thread unsafeness
+    /**
+     * Sequence of the next frame to be written. Only written by the
+     * producer.
+     */
+    private transient volatile long tail = 0;
 
     /**
-     * The current singleton instance of this InputQueue
+     * Producer's last observed value of head, saving a volatile read on
+     * every offer while the queue has space.
      */
-    private final static InputQueue singletonQueue = new InputQueue();
+    private transient long cachedHead = 0;
 
-    private final transient Queue<Integer> queue;
+    private transient volatile WaitStrategy waitStrategy;
 
-    private final transient Semaphore queueLock = new Semaphore(1, true);
+    // -- Sequence tracking, used only by the consumer -- //
+    private transient boolean sequenceStarted = false;
+
+    private transient int expectedSequence = 0;
 
     /**
      * Creates a new instance of InputQueue
+     * 
+     * @param capacity
+     *                The number of frames the queue can hold. This must be a
+     *                power of two.
      */
-    private InputQueue() {
-	// Create a new LinkedList to store as the queue.
-	queue = new LinkedList<Integer>();
+    public InputQueue(final int capacity) {
+	if ((capacity < 1) || ((capacity & (capacity - 1)) != 0)) {
+	    throw new IllegalArgumentException("Queue capacity " + capacity
+		    + " is not a power of two.");
+	}
+	frames = new DMXFrame[capacity];
+	for (int i = 0; i < capacity; i++) {
+	    frames[i] = new DMXFrame();
+	}
+	mask = capacity - 1;
+	waitStrategy = createWaitStrategy(System.getProperty(
+		WAIT_STRATEGY_PROPERTY, WaitStrategy.BLOCKING));
     }
 
     /**
-     * Retrieve the current instance of InputQueue, creating one if
-     * necessary.
+     * Method to append a frame to the end of the queue. The frame is copied
+     * into a preallocated slot, so the caller may reuse its array as soon
+     * as this returns. Must only be called from the producer thread.
      * 
-     * @return The singleton instance of InputQueue.
+     * @param frame
+     *                The frame to queue.
+     * @return True if the frame was queued, false if the queue was full.
      */
-    public static InputQueue getInstance() {
-	return singletonQueue;
+    public boolean offer(final DMXFrame frame) {
+	if (!frame.isValid()) {
+	    throw new IllegalArgumentException("Frame length "
+		    + frame.getLength()
+		    + " was not within the permissible range of 1 to 512"
+		    + " inclusive.");
+	}
+	final long currentTail = tail;
+	if (currentTail - cachedHead >= frames.length) {
+	    cachedHead = head;
+	    if (currentTail - cachedHead >= frames.length) {
+		return false;
+	    }
+	}
+	frames[(int) currentTail & mask].copyFrom(frame);
+	// Publish the slot. The volatile write orders the copy before it.
+	tail = currentTail + 1;
+	waitStrategy.signal();
+	return true;
     }
 
     /**
-     * Method to append an element to the end of the queue.
+     * Method to "poll" the first frame from the queue, removing it. Must
+     * only be called from the consumer thread.
      * 
-     * @param value
-     *                The value to append to the end of the queue.
-     */
-    public void add(final int value) {
-	try {
-	    queueLock.acquire();
-	    queue.add(Integer.valueOf(value));
-	    queueLock.release();
-	} catch (java.lang.InterruptedException e) {
-	    e.printStackTrace(System.err);
+     * @param destination
+     *                The frame to copy the first queued frame into.
+     * @return True if a frame was copied, false if the queue was empty.
+     */
+    public boolean poll(final DMXFrame destination) {
+	final long currentHead = head;
+	if (currentHead >= tail) {
+	    return false;
 	}
+	destination.copyFrom(frames[(int) currentHead & mask]);
+	// Release the slot back to the producer.
+	head = currentHead + 1;
+	return true;
     }
 
     /**
-     * Method to append an element to the end of the queue.
+     * Method to take the first frame from the queue, waiting for one to
+     * arrive if necessary. Must only be called from the consumer thread.
      * 
-     * @param intValue
-     *                The Integer to append to the end of the queue.
-     */
-    public void add(final Integer intValue) {
-	try {
-	    queueLock.acquire();
-	    queue.add(intValue);
-	    queueLock.release();
-	} catch (java.lang.InterruptedException e) {
-	    e.printStackTrace(System.err);
+     * @param destination
+     *                The frame to copy the first queued frame into.
+     * @throws InterruptedException
+     *                 The thread was interrupted while waiting.
+     */
+    public void take(final DMXFrame destination) throws InterruptedException {
+	while (!poll(destination)) {
+	    waitStrategy.waitFor(this);
 	}
     }
 
     /**
-     * Method to "poll" the first element from the queue, removing it.
+     * Record the sequence number of a frame taken from the queue, and work
+     * out how many frames were missed since the previous one. Must only be
+     * called from the consumer thread.
      * 
-     * @return The value of the first element in the queue.
-     */
-    public Integer poll() {
-	Integer returnedInteger = null;
-	try {
-	    queueLock.acquire();
-	    try {
-		returnedInteger = queue.poll();
-	    } catch (java.lang.NullPointerException e) {
-		returnedInteger = Integer.valueOf(-1);
-	    }
-	    queueLock.release();
-	} catch (java.lang.InterruptedException e) {
-	    e.printStackTrace(System.err);
-	}
-	return returnedInteger;
+     * @param sequence
+     *                The sequence number of the frame just taken.
+     * @return The number of frames missing from the sequence.
+     */
+    public int checkSequence(final int sequence) {
+	final int gap = sequence - expectedSequence;
+	final boolean started = sequenceStarted;
+	sequenceStarted = true;
+	expectedSequence = sequence + 1;
+	return (started && (gap > 0)) ? gap : 0;
     }
 
     /**
-     * Method to "peek" at the first element in the queue, without removing
-     * it.
+     * Check whether there are any frames waiting in the queue.
      * 
-     * @return The value of the first element in the queue.
-     */
-    public Integer peek() {
-	Integer returnedInteger = null;
-	try {
-	    queueLock.acquire();
-	    try {
-		returnedInteger = queue.peek();
-	    } catch (java.lang.NullPointerException e) {
-		returnedInteger = Integer.valueOf(-1);
-	    }
-	    queueLock.release();
-	} catch (java.lang.InterruptedException e) {
-	    e.printStackTrace(System.err);
+     * @return True if no frames are waiting.
+     */
+    public boolean isEmpty() {
+	return head >= tail;
+    }
+
+    /**
+     * Get the number of frames presently waiting in the queue.
+     * 
+     * @return The number of queued frames.
+     */
+    public int size() {
+	return (int) (tail - head);
+    }
+
+    /**
+     * Get the number of frames this queue can hold.
+     * 
+     * @return The capacity of the queue.
+     */
+    public int getCapacity() {
+	return frames.length;
+    }
+
+    /**
+     * Get the WaitStrategy used by the consumer of this queue.
+     * 
+     * @return The current WaitStrategy.
+     */
+    public WaitStrategy getWaitStrategy() {
+	return waitStrategy;
+    }
+
+    /**
+     * Set the WaitStrategy used by the consumer of this queue. This should
+     * be done before the consumer starts taking frames.
+     * 
+     * @param waitStrategy
+     *                The WaitStrategy to use.
+     */
+    public void setWaitStrategy(final WaitStrategy waitStrategy) {
+	this.waitStrategy = waitStrategy;
+    }
+
+    /**
+     * Create the WaitStrategy matching a given name.
+     * 
+     * @param name
+     *                One of WaitStrategy.BLOCKING, WaitStrategy.YIELDING or
+     *                WaitStrategy.SPIN.
+     * @return A new WaitStrategy. Unrecognised names give a
+     *         BlockingWaitStrategy.
+     */
+    public static WaitStrategy createWaitStrategy(final String name) {
+	WaitStrategy strategy;
+	if (WaitStrategy.SPIN.equalsIgnoreCase(name)) {
+	    strategy = new SpinParkWaitStrategy();
+	} else if (WaitStrategy.YIELDING.equalsIgnoreCase(name)) {
+	    strategy = new YieldingWaitStrategy();
+	} else {
+	    strategy = new BlockingWaitStrategy();
 	}
-	return returnedInteger;
+	return strategy;
     }
 }
@@ -0,0 +1,288 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.dmx;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Synthetic source of DMX traffic, sending a chosen pattern of frames to a
+ * range of Universes at a fixed frame rate, so that the whole input pipeline
+ * can be stressed without a console or network. It needs no GUI, and reports
+ * the frame rate it achieved against the rate requested.
+ * 
+ * The generator runs on its own thread and adds its own MergeSource to each
+ * Universe it feeds. Frames are sent on a drift-free schedule; if the
+ * generator falls behind by more than a frame it skips ahead rather than
+ * sending a burst, counting the frames it missed.
+ * 
+ * @author chris
+ */
+public class LoadGenerator implements Runnable {
+
+    /**
+     * Value used to indicate random values on every channel.
+     */
+    public static final int RANDOM_PATTERN = 50001;
+
+    /**
+     * Value used to indicate a ramp, each channel rising by one per frame
+     * and offset from its neighbour by one.
+     */
+    public static final int RAMP_PATTERN = 50002;
+
+    /**
+     * Value used to indicate a sequence of recorded frames, replayed in a
+     * loop.
+     */
+    public static final int REPLAY_PATTERN = 50003;
+
+    /**
+     * Name of the MergeSource added to each Universe fed.
+     */
+    public static final String SOURCE_NAME = "Load Generator";
+
+    private static final long NANOS_PER_SECOND = 1000000000L;
+
+    // Remaining time below which the thread spins rather than parks
+    private static final long SPIN_THRESHOLD = 50000L;
+
+    private final transient MergeEngine[] engines;
+
+    private final transient MergeSource[] sources;
+
+    private final transient int pattern;
+
+    private final transient double requestedRate;
+
+    private final transient long periodNanos;
+
+    private final transient byte[][] replayFrames;
+
+    private final transient FastRandom random = new FastRandom();
+
+    private final transient DMXFrame frame = new DMXFrame();
+
+    private transient volatile boolean running = false;
+
+    // -- Statistics, written only by the generator thread -- //
+    private transient volatile long framesSent = 0;
+
+    private transient volatile long framesDropped = 0;
+
+    private transient volatile long ticksMissed = 0;
+
+    private transient volatile long ticks = 0;
+
+    private transient volatile long startTime = 0;
+
+    private transient volatile long lastTickTime = 0;
+
+    /**
+     * Creates a new instance of LoadGenerator
+     * 
+     * @param universes
+     *                The Universes to send frames to.
+     * @param pattern
+     *                One of RANDOM_PATTERN, RAMP_PATTERN or REPLAY_PATTERN.
+     * @param framesPerSecond
+     *                The number of frames to send to each Universe per
+     *                second.
+     * @param replay
+     *                Frames to replay for REPLAY_PATTERN, or null for the
+     *                other patterns. These are copied.
+     */
+    public LoadGenerator(final Universe[] universes, final int pattern,
+	    final double framesPerSecond, final DMXFrame[] replay) {
+	super();
+	switch (pattern) {
+	case RANDOM_PATTERN:
+	case RAMP_PATTERN:
+	    break;
+	case REPLAY_PATTERN:
+	    if ((replay == null) || (replay.length == 0)) {
+		throw new IllegalArgumentException(
+			"No frames were provided to replay.");
+	    }
+	    break;
+	default:
+	    throw new IllegalArgumentException("Pattern " + pattern
+		    + " is not valid.");
+	}
+	if (framesPerSecond <= 0) {
+	    throw new IllegalArgumentException("Frame rate " + framesPerSecond
+		    + " must be greater than zero.");
+	}
+	this.pattern = pattern;
+	requestedRate = framesPerSecond;
+	periodNanos = (long) (NANOS_PER_SECOND / framesPerSecond);
+
+	engines = new MergeEngine[universes.length];
+	sources = new MergeSource[universes.length];
+	for (int i = 0; i < universes.length; i++) {
+	    engines[i] = universes[i].getMergeEngine();
+	    sources[i] = engines[i].addSource(SOURCE_NAME,
+		    MergeSource.DEFAULT_PRIORITY);
+	}
+	if (pattern == REPLAY_PATTERN) {
+	    replayFrames = new byte[replay.length][DMXFrame.MAX_SLOTS];
+	    for (int i = 0; i < replay.length; i++) {
+		System.arraycopy(replay[i].getData(), 0, replayFrames[i], 0,
+			replay[i].getLength());
+	    }
+	} else {
+	    replayFrames = null;
+	}
+	frame.setStartCode(DMXFrame.NULL_START_CODE);
+	frame.setLength(DMXFrame.MAX_SLOTS);
+    }
+
+    /**
+     * Start sending frames on a new daemon thread.
+     */
+    public void start() {
+	running = true;
+	final Thread generatorThread = new Thread(this, "DMX Load Generator");
+	generatorThread.setDaemon(true);
+	generatorThread.start();
+    }
+
+    /**
+     * Stop sending frames, and remove this generator's sources from the
+     * Universes it fed.
+     */
+    public void stop() {
+	running = false;
+    }
+
+    /**
+     * Method invoked when the generator thread is started.
+     */
+    public void run() {
+	final long start = System.nanoTime();
+	startTime = start;
+	long tick = 0;
+	while (running) {
+	    final long deadline = start + (tick * periodNanos);
+	    long remaining = deadline - System.nanoTime();
+	    while (remaining > 0) {
+		if (remaining > SPIN_THRESHOLD) {
+		    LockSupport.parkNanos(this, remaining - SPIN_THRESHOLD);
+		}
+		remaining = deadline - System.nanoTime();
+	    }
+	    sendTick(tick);
+	    lastTickTime = System.nanoTime();
+	    ticks++;
+
+	    // Skip any ticks which have already passed
+	    final long behind = (lastTickTime - start) / periodNanos;
+	    if (behind > tick + 1) {
+		ticksMissed += behind - tick - 1;
+		tick = behind;
+	    } else {
+		tick++;
+	    }
+	}
+	for (int i = 0; i < sources.length; i++) {
+	    engines[i].removeSource(sources[i]);
+	}
+    }
+
+    /**
+     * Build and send one frame to each Universe.
+     */
+    private void sendTick(final long tick) {
+	final byte[] data = frame.getData();
+	frame.setSequence((int) tick + 1);
+	for (int u = 0; u < sources.length; u++) {
+	    switch (pattern) {
+	    case RANDOM_PATTERN:
+		random.nextBytes(data, DMXFrame.MAX_SLOTS);
+		break;
+	    case RAMP_PATTERN:
+		final int base = (int) tick + u;
+		for (int i = 0; i < DMXFrame.MAX_SLOTS; i++) {
+		    data[i] = (byte) (base + i);
+		}
+		break;
+	    default:
+		System.arraycopy(replayFrames[(int) (tick % replayFrames.length)],
+			0, data, 0, DMXFrame.MAX_SLOTS);
+	    }
+	    if (sources[u].getInputQueue().offer(frame)) {
+		framesSent++;
+	    } else {
+		framesDropped++;
+	    }
+	}
+    }
+
+    /**
+     * Get the frame rate requested for each Universe.
+     * 
+     * @return The requested frames per second.
+     */
+    public double getRequestedRate() {
+	return requestedRate;
+    }
+
+    /**
+     * Get the frame rate achieved for each Universe since the generator
+     * started.
+     * 
+     * @return The achieved frames per second.
+     */
+    public double getAchievedRate() {
+	final long elapsed = lastTickTime - startTime;
+	if (elapsed <= 0) {
+	    return 0;
+	}
+	// The first tick is sent at the start time, so count intervals
+	return (double) (ticks - 1) * NANOS_PER_SECOND / elapsed;
+    }
+
+    /**
+     * Get the number of frames queued, across all Universes.
+     * 
+     * @return The number of frames sent.
+     */
+    public long getFramesSent() {
+	return framesSent;
+    }
+
+    /**
+     * Get the number of frames lost because a Universe's InputQueue was
+     * full.
+     * 
+     * @return The number of frames dropped.
+     */
+    public long getFramesDropped() {
+	return framesDropped;
+    }
+
+    /**
+     * Get the number of ticks skipped because the generator fell behind.
+     * 
+     * @return The number of ticks missed.
+     */
+    public long getTicksMissed() {
+	return ticksMissed;
+    }
+}
@@ -0,0 +1,539 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.dmx;
+
+/**
+ * Merge stage between the sources feeding a Universe and the Universe itself.
+ * The last frame from each source is kept, and the values presented to the
+ * Universe are computed per channel as one of:
+ * <ul>
+ * <li>HTP - the highest value from any source takes precedence.</li>
+ * <li>LTP - the value most recently changed by any source takes precedence.
+ * The source which last wrote each channel is kept, so the channel only
+ * falls back to HTP when that source is removed.</li>
+ * <li>Priority - only the sources of the highest priority contribute, merged
+ * HTP between themselves.</li>
+ * </ul>
+ * 
+ * Merging is only performed by the listener thread draining the Universe, and
+ * only over the channels which actually changed in the incoming frame or
+ * patch. The merged channels which may have changed are tracked until they are
+ * next applied to the Universe.
+ * 
+ * @author chris
+ */
+public class MergeEngine {
+
+    /**
+     * Value used to indicate a highest takes precedence merge.
+     */
+    public static final int HTP_MERGE = 40001;
+
+    /**
+     * Value used to indicate a latest takes precedence merge.
+     */
+    public static final int LTP_MERGE = 40002;
+
+    /**
+     * Value used to indicate a merge of the highest priority sources only.
+     */
+    public static final int PRIORITY_MERGE = 40003;
+
+    /**
+     * Name of the source created for local input such as the Generator.
+     */
+    public static final String LOCAL_SOURCE = "Local";
+
+    private transient volatile int mergeMode = HTP_MERGE;
+
+    /**
+     * The sources of the Universe. Replaced, never modified, when a source
+     * is added or removed so the listener thread can read it without locks.
+     */
+    private transient volatile MergeSource[] sources = new MergeSource[0];
+
+    private transient volatile WaitStrategy waitStrategy = null;
+
+    // Set when the merged values must be recomputed from scratch
+    private transient volatile boolean recomputeNeeded = false;
+
+    // -- Merge state, used only by the listener thread -- //
+    private final transient DMXFrame output = new DMXFrame();
+
+    private final transient ChannelSet dirtyChannels = new ChannelSet();
+
+    private transient boolean allDirty = false;
+
+    private final transient ChannelSet patchChanged = new ChannelSet();
+
+    // Source which last wrote each channel in an LTP merge
+    private final transient MergeSource[] lastWriter = new MergeSource[DMXFrame.MAX_SLOTS];
+
+    // Merge mode the merged values were last computed in
+    private transient int mergedMode = HTP_MERGE;
+
+    /**
+     * Creates a new instance of MergeEngine
+     */
+    public MergeEngine() {
+	super();
+	output.setStartCode(DMXFrame.NULL_START_CODE);
+	output.setLength(DMXFrame.MAX_SLOTS);
+    }
+
+    /**
+     * Add a new source to the merge.
+     * 
+     * @param name
+     *                Name identifying the source.
+     * @param priority
+     *                Priority of the source, higher values taking
+     *                precedence in a priority merge.
+     * @return The new source, whose InputQueue its producer should feed.
+     */
+    public synchronized MergeSource addSource(final String name,
+	    final int priority) {
+	final MergeSource source = new MergeSource(name, priority);
+	if (waitStrategy != null) {
+	    source.getInputQueue().setWaitStrategy(waitStrategy);
+	}
+	final MergeSource[] current = sources;
+	final MergeSource[] replacement = new MergeSource[current.length + 1];
+	System.arraycopy(current, 0, replacement, 0, current.length);
+	replacement[current.length] = source;
+	sources = replacement;
+	return source;
+    }
+
+    /**
+     * Remove a source from the merge. Its values stop contributing to the
+     * Universe once the listener next runs.
+     * 
+     * @param source
+     *                The source to remove.
+     */
+    public synchronized void removeSource(final MergeSource source) {
+	final MergeSource[] current = sources;
+	int index = -1;
+	for (int i = 0; i < current.length; i++) {
+	    if (current[i] == source) {
+		index = i;
+	    }
+	}
+	if (index == -1) {
+	    return;
+	}
+	final MergeSource[] replacement = new MergeSource[current.length - 1];
+	System.arraycopy(current, 0, replacement, 0, index);
+	System.arraycopy(current, index + 1, replacement, index,
+		current.length - index - 1);
+	sources = replacement;
+	source.remove();
+	requestRecompute();
+    }
+
+    /**
+     * Get the sources of the merge.
+     * 
+     * @return The sources, which must not be modified.
+     */
+    public MergeSource[] getSources() {
+	return sources;
+    }
+
+    /**
+     * Find a source by name.
+     * 
+     * @param name
+     *                The name of the source.
+     * @return The first source with that name, or null if there is none.
+     */
+    public MergeSource getSource(final String name) {
+	final MergeSource[] current = sources;
+	for (int i = 0; i < current.length; i++) {
+	    if (current[i].getName().equals(name)) {
+		return current[i];
+	    }
+	}
+	return null;
+    }
+
+    /**
+     * Get the merge mode.
+     * 
+     * @return One of HTP_MERGE, LTP_MERGE or PRIORITY_MERGE.
+     */
+    public int getMergeMode() {
+	return mergeMode;
+    }
+
+    /**
+     * Set the merge mode. The merged values are recomputed once the listener
+     * next runs.
+     * 
+     * @param mergeMode
+     *                One of HTP_MERGE, LTP_MERGE or PRIORITY_MERGE.
+     */
+    public void setMergeMode(final int mergeMode) {
+	switch (mergeMode) {
+	case HTP_MERGE:
+	case LTP_MERGE:
+	case PRIORITY_MERGE:
+	    break;
+	default:
+	    throw new IllegalArgumentException("Merge mode " + mergeMode
+		    + " is not valid.");
+	}
+	this.mergeMode = mergeMode;
+	requestRecompute();
+    }
+
+    /**
+     * Set the WaitStrategy of the listener draining the sources' queues,
+     * which is shared with every source added in future.
+     * 
+     * @param waitStrategy
+     *                The WaitStrategy of the listener.
+     */
+    public synchronized void setWaitStrategy(final WaitStrategy waitStrategy) {
+	this.waitStrategy = waitStrategy;
+	final MergeSource[] current = sources;
+	for (int i = 0; i < current.length; i++) {
+	    current[i].getInputQueue().setWaitStrategy(waitStrategy);
+	}
+    }
+
+    /**
+     * Ask the listener to recompute every channel of the merge, for instance
+     * after a change of priority.
+     */
+    public void requestRecompute() {
+	recomputeNeeded = true;
+	final WaitStrategy strategy = waitStrategy;
+	if (strategy != null) {
+	    strategy.signal();
+	}
+    }
+
+    /**
+     * Check whether there is nothing for the listener to do, with no frames
+     * waiting in any source's queue and no recompute requested.
+     * 
+     * @return True if there is nothing to do.
+     */
+    boolean isEmpty() {
+	if (recomputeNeeded) {
+	    return false;
+	}
+	final MergeSource[] current = sources;
+	for (int i = 0; i < current.length; i++) {
+	    if (!current[i].getInputQueue().isEmpty()) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * Take a frame received from a source into the merge, recomputing the
+     * channels it changed. Called only from the listener thread.
+     * 
+     * @param source
+     *                The source the frame came from.
+     * @param frame
+     *                A valid frame of level data.
+     * @return True if the merged values may have changed.
+     */
+    boolean update(final MergeSource source, final DMXFrame frame) {
+	if (frame.isPatch()) {
+	    return updatePatch(source, frame);
+	}
+	final byte[] incoming = frame.getData();
+	final byte[] previous = source.values;
+	final int length = frame.getLength();
+
+	// Find the range of channels this source changed
+	int first = 0;
+	while ((first < length) && (incoming[first] == previous[first])) {
+	    first++;
+	}
+	final boolean wasActive = source.active;
+	final int priority = source.getPriority();
+	final boolean priorityChanged = (priority != source.mergedPriority)
+		&& (mergeMode == PRIORITY_MERGE);
+	source.active = true;
+	source.mergedPriority = priority;
+	if ((first == length) && wasActive && !priorityChanged) {
+	    return false;
+	}
+	int last = length - 1;
+	while ((last > first) && (incoming[last] == previous[last])) {
+	    last--;
+	}
+	if (first < length) {
+	    System.arraycopy(incoming, first, previous, first, last - first
+		    + 1);
+	}
+
+	if (mergeMode == LTP_MERGE) {
+	    trackMode(LTP_MERGE);
+	    if (!wasActive) {
+		// Every channel sent by a new source is its latest
+		first = 0;
+		last = length - 1;
+	    }
+	    final byte[] merged = output.getData();
+	    for (int i = first; i <= last; i++) {
+		merged[i] = previous[i];
+		lastWriter[i] = source;
+	    }
+	} else if (!wasActive || priorityChanged) {
+	    // This may alter any channel, including the unsent ones
+	    recomputeAll();
+	    return true;
+	} else {
+	    recompute(first, last);
+	}
+	for (int i = first; i <= last; i++) {
+	    dirtyChannels.add(i + 1);
+	}
+	return true;
+    }
+
+    /**
+     * Take a patch received from a source into the merge, recomputing only
+     * the channels it changed.
+     */
+    private boolean updatePatch(final MergeSource source, final DMXFrame frame) {
+	final byte[] incoming = frame.getData();
+	final byte[] previous = source.values;
+	final ChannelSet channels = frame.getPatchChannels();
+
+	patchChanged.clear();
+	for (int c = channels.next(1); c != -1; c = channels.next(c + 1)) {
+	    if (incoming[c - 1] != previous[c - 1]) {
+		previous[c - 1] = incoming[c - 1];
+		patchChanged.add(c);
+	    }
+	}
+	final boolean wasActive = source.active;
+	final int priority = source.getPriority();
+	final boolean priorityChanged = (priority != source.mergedPriority)
+		&& (mergeMode == PRIORITY_MERGE);
+	source.active = true;
+	source.mergedPriority = priority;
+	if ((mergeMode == LTP_MERGE) && !wasActive) {
+	    // Every channel sent by a new source is its latest
+	    patchChanged.copyFrom(channels);
+	} else if (!wasActive || priorityChanged) {
+	    recomputeAll();
+	    return true;
+	}
+	if (patchChanged.isEmpty()) {
+	    return false;
+	}
+	final byte[] merged = output.getData();
+	final int topPriority = topPriority();
+	final MergeSource[] current = sources;
+	if (mergeMode == LTP_MERGE) {
+	    trackMode(LTP_MERGE);
+	}
+	for (int c = patchChanged.next(1); c != -1; c = patchChanged
+		.next(c + 1)) {
+	    if (mergeMode == LTP_MERGE) {
+		merged[c - 1] = previous[c - 1];
+		lastWriter[c - 1] = source;
+	    } else {
+		merged[c - 1] = 0;
+		mergeChannel(current, topPriority, c - 1);
+	    }
+	    dirtyChannels.add(c);
+	}
+	return true;
+    }
+
+    /**
+     * Recompute every channel if this has been requested. Called only from
+     * the listener thread.
+     * 
+     * @return True if the merged values may have changed.
+     */
+    boolean recomputeIfNeeded() {
+	if (!recomputeNeeded) {
+	    return false;
+	}
+	recomputeNeeded = false;
+	recomputeAll();
+	return true;
+    }
+
+    /**
+     * Check whether every merged channel may have changed since the merge
+     * was last applied. Called only from the listener thread.
+     * 
+     * @return True if the whole output should be applied.
+     */
+    boolean isAllDirty() {
+	return allDirty;
+    }
+
+    /**
+     * Get the merged channels which may have changed since the merge was
+     * last applied. Called only from the listener thread.
+     * 
+     * @return The set of changed channels, which is not copied.
+     */
+    ChannelSet getDirtyChannels() {
+	return dirtyChannels;
+    }
+
+    /**
+     * Note that the merge has been applied to the Universe. Called only from
+     * the listener thread.
+     */
+    void clearDirty() {
+	allDirty = false;
+	dirtyChannels.clear();
+    }
+
+    /**
+     * Get the frame of merged values. Called only from the listener thread.
+     * 
+     * @return The merged frame.
+     */
+    DMXFrame getOutput() {
+	return output;
+    }
+
+    /**
+     * Recompute every merged channel, all of which must then be applied.
+     */
+    private void recomputeAll() {
+	recompute(0, DMXFrame.MAX_SLOTS - 1);
+	allDirty = true;
+    }
+
+    /**
+     * Recompute a range of merged channels from the values of every active
+     * source. In an LTP merge each channel keeps the value of the source
+     * which last wrote it, and only channels whose writer has gone are
+     * merged HTP, the winner becoming their writer.
+     */
+    private void recompute(final int first, final int last) {
+	final int mode = mergeMode;
+	trackMode(mode);
+	if (mode == LTP_MERGE) {
+	    recomputeLatest(first, last);
+	    return;
+	}
+	final MergeSource[] current = sources;
+	final byte[] merged = output.getData();
+	final int topPriority = topPriority();
+	for (int i = first; i <= last; i++) {
+	    merged[i] = 0;
+	}
+	for (int s = 0; s < current.length; s++) {
+	    final MergeSource source = current[s];
+	    if (!source.active || (source.mergedPriority < topPriority)) {
+		continue;
+	    }
+	    final byte[] values = source.values;
+	    for (int i = first; i <= last; i++) {
+		if ((values[i] & 0xFF) > (merged[i] & 0xFF)) {
+		    merged[i] = values[i];
+		}
+	    }
+	}
+    }
+
+    /**
+     * Note the merge mode merged values are being computed in, forgetting
+     * the writers of each channel if it has changed since last time.
+     */
+    private void trackMode(final int mode) {
+	if (mode != mergedMode) {
+	    // Writers recorded before another merge are out of date
+	    for (int i = 0; i < lastWriter.length; i++) {
+		lastWriter[i] = null;
+	    }
+	    mergedMode = mode;
+	}
+    }
+
+    /**
+     * Recompute a range of merged channels in an LTP merge.
+     */
+    private void recomputeLatest(final int first, final int last) {
+	final MergeSource[] current = sources;
+	final byte[] merged = output.getData();
+	for (int i = first; i <= last; i++) {
+	    final MergeSource writer = lastWriter[i];
+	    if ((writer != null) && writer.active && !writer.isRemoved()) {
+		merged[i] = writer.values[i];
+		continue;
+	    }
+	    MergeSource highest = null;
+	    int highestValue = -1;
+	    for (int s = 0; s < current.length; s++) {
+		final MergeSource source = current[s];
+		if (source.active && ((source.values[i] & 0xFF) > highestValue)) {
+		    highest = source;
+		    highestValue = source.values[i] & 0xFF;
+		}
+	    }
+	    merged[i] = (highest == null) ? 0 : highest.values[i];
+	    lastWriter[i] = highest;
+	}
+    }
+
+    /**
+     * Merge a single channel, already cleared, HTP from every active source
+     * of at least the given priority.
+     */
+    private void mergeChannel(final MergeSource[] current,
+	    final int topPriority, final int index) {
+	final byte[] merged = output.getData();
+	for (int s = 0; s < current.length; s++) {
+	    final MergeSource source = current[s];
+	    if (source.active && (source.mergedPriority >= topPriority)
+		    && ((source.values[index] & 0xFF) > (merged[index] & 0xFF))) {
+		merged[index] = source.values[index];
+	    }
+	}
+    }
+
+    /**
+     * Find the highest priority of any active source in a priority merge,
+     * below which sources are ignored. Other merges ignore no sources.
+     */
+    private int topPriority() {
+	int topPriority = Integer.MIN_VALUE;
+	if (mergeMode == PRIORITY_MERGE) {
+	    final MergeSource[] current = sources;
+	    for (int s = 0; s < current.length; s++) {
+		if (current[s].active
+			&& (current[s].mergedPriority > topPriority)) {
+		    topPriority = current[s].mergedPriority;
+		}
+	    }
+	}
+	return topPriority;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.dmx;
+
+/**
+ * One source of DMX feeding a Universe through its MergeEngine, such as a
+ * console on the network or the local Generator. Each source has its own
+ * InputQueue, so that every queue keeps a single producer, and its own copy of
+ * the last frame it sent.
+ * 
+ * @author chris
+ */
+public class MergeSource {
+
+    /**
+     * Priority given to sources when none is specified.
+     */
+    public static final int DEFAULT_PRIORITY = 100;
+
+    private final transient String name;
+
+    private final transient InputQueue inputQueue;
+
+    private transient volatile int priority;
+
+    private transient volatile boolean removed = false;
+
+    // -- Merge state, used only by the listener thread -- //
+    final transient byte[] values = new byte[DMXFrame.MAX_SLOTS];
+
+    transient boolean active = false;
+
+    transient int mergedPriority;
+
+    /**
+     * Creates a new instance of MergeSource
+     * 
+     * @param name
+     *                Name identifying the source.
+     * @param priority
+     *                Priority of the source, higher values taking
+     *                precedence in a priority merge.
+     */
+    MergeSource(final String name, final int priority) {
+	super();
+	this.name = name;
+	this.priority = priority;
+	mergedPriority = priority;
+	inputQueue = new InputQueue(InputQueue.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Get the name of this source.
+     * 
+     * @return The name of the source.
+     */
+    public String getName() {
+	return name;
+    }
+
+    /**
+     * Get the queue through which this source's frames reach the Universe.
+     * 
+     * @return The InputQueue of this source.
+     */
+    public InputQueue getInputQueue() {
+	return inputQueue;
+    }
+
+    /**
+     * Get the priority of this source.
+     * 
+     * @return The priority.
+     */
+    public int getPriority() {
+	return priority;
+    }
+
+    /**
+     * Set the priority of this source. This takes effect from the next
+     * frame received from this source.
+     * 
+     * @param priority
+     *                The priority, higher values taking precedence.
+     */
+    public void setPriority(final int priority) {
+	this.priority = priority;
+    }
+
+    /**
+     * Check whether this source has been removed from its MergeEngine.
+     * 
+     * @return True if the source has been removed.
+     */
+    public boolean isRemoved() {
+	return removed;
+    }
+
+    /**
+     * Mark this source as removed.
+     */
+    void remove() {
+	removed = true;
+    }
+}
@@ -0,0 +1,434 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.dmx;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import dmxeffects.OperationFailedException;
+
+/**
+ * Network input receiving sACN (ANSI E1.31) data packets and feeding them to
+ * the matching Universes of a UniverseRegistry. The E1.31 universe number of a
+ * packet is used directly as the Universe number. Packets may arrive by
+ * unicast, or by multicast once the relevant universes have been joined.
+ * 
+ * Each source is identified by its CID and tracked per universe, along with
+ * its priority and sequence number. Packets which arrive out of order are
+ * dropped, as are packets from sources of lower priority than the one being
+ * followed for a universe; among sources of equal priority, the source
+ * already being followed keeps control. The followed source's priority is
+ * passed on to the MergeEngine of the Universe, so that a priority merge can
+ * weigh it against other inputs. A source which terminates its stream, or is
+ * silent for 2.5 seconds, is forgotten, and if it was being followed its
+ * levels are released from the merge until another source takes over. Source
+ * state is kept in a table of slots, linked into a list for each universe,
+ * so a packet only looks through the sources of its own universe. The table
+ * grows only when a new source appears, so tracking many sources allocates
+ * nothing per packet.
+ * 
+ * @author chris
+ */
+public class SACNReceiver extends DatagramReceiver {
+
+    /**
+     * UDP port on which sACN is sent.
+     */
+    public static final int SACN_PORT = 5568;
+
+    /**
+     * Maximum number of sources tracked at once for any one universe.
+     */
+    public static final int MAX_SOURCES = 64;
+
+    /**
+     * Time after which a silent source is forgotten, in milliseconds.
+     */
+    public static final long SOURCE_TIMEOUT = 2500L;
+
+    private static final byte[] PACKET_ID = { 'A', 'S', 'C', '-', 'E', '1',
+	    '.', '1', '7', 0, 0, 0 };
+
+    private static final int VECTOR_ROOT_E131_DATA = 0x00000004;
+
+    private static final int VECTOR_E131_DATA_PACKET = 0x00000002;
+
+    private static final int VECTOR_DMP_SET_PROPERTY = 0x02;
+
+    // Offsets within an E1.31 data packet
+    private static final int PACKET_ID_OFFSET = 4;
+
+    private static final int ROOT_VECTOR_OFFSET = 18;
+
+    private static final int CID_OFFSET = 22;
+
+    private static final int FRAMING_VECTOR_OFFSET = 40;
+
+    private static final int PRIORITY_OFFSET = 108;
+
+    private static final int SEQUENCE_OFFSET = 111;
+
+    private static final int OPTIONS_OFFSET = 112;
+
+    private static final int UNIVERSE_OFFSET = 113;
+
+    private static final int DMP_VECTOR_OFFSET = 117;
+
+    private static final int COUNT_OFFSET = 123;
+
+    private static final int START_CODE_OFFSET = 125;
+
+    private static final int DATA_OFFSET = 126;
+
+    // Largest packet worth reading, a full data packet
+    private static final int BUFFER_SIZE = DATA_OFFSET + DMXFrame.MAX_SLOTS;
+
+    // Option flags
+    private static final int OPTION_PREVIEW = 0x80;
+
+    private static final int OPTION_TERMINATED = 0x40;
+
+    // Number of slots in the source table to begin with
+    private static final int INITIAL_SLOTS = 64;
+
+    // -- Source table, used only by the receiver thread -- //
+    private transient boolean[] sourceActive = new boolean[0];
+
+    private transient long[] sourceCidHigh = new long[0];
+
+    private transient long[] sourceCidLow = new long[0];
+
+    private transient int[] sourceUniverse = new int[0];
+
+    private transient int[] sourcePriority = new int[0];
+
+    private transient int[] sourceSequence = new int[0];
+
+    private transient long[] sourceLastSeen = new long[0];
+
+    // Next slot in the same universe's list, or in the free list; -1 ends
+    private transient int[] sourceNext = new int[0];
+
+    private transient int freeSlot = -1;
+
+    // Per universe: source being followed, or -1, and extended sequence
+    private final transient int[] universeSource = new int[UniverseRegistry.MAX_UNIVERSE + 1];
+
+    // Per universe: first of its sources, or -1, and how many there are
+    private final transient int[] universeFirstSource = new int[UniverseRegistry.MAX_UNIVERSE + 1];
+
+    private final transient int[] universeSourceCount = new int[UniverseRegistry.MAX_UNIVERSE + 1];
+
+    private final transient int[] frameSequence = new int[UniverseRegistry.MAX_UNIVERSE + 1];
+
+    private transient long nextSweep = 0;
+
+    // -- Statistics, written only by the receiver thread -- //
+    private transient volatile long packetsOutOfOrder = 0;
+
+    private transient volatile long packetsSuperseded = 0;
+
+    /**
+     * Creates a new instance of SACNReceiver
+     * 
+     * @param registry
+     *                The registry holding the Universes to feed.
+     */
+    public SACNReceiver(final UniverseRegistry registry) {
+	super(registry, "sACN", BUFFER_SIZE);
+	for (int i = 0; i < universeSource.length; i++) {
+	    universeSource[i] = -1;
+	    universeFirstSource[i] = -1;
+	}
+	growSources(INITIAL_SLOTS);
+    }
+
+    /**
+     * Join the multicast group of a universe, so that its packets are
+     * received. The channel must have been bound first, normally to port
+     * 5568 on the wildcard address.
+     * 
+     * @param universeNumber
+     *                The E1.31 universe, from 1 to 63999 inclusive.
+     * @param networkInterface
+     *                The interface to join the group on.
+     * @throws OperationFailedException
+     *                 The group could not be joined.
+     */
+    public void joinUniverse(final int universeNumber,
+	    final NetworkInterface networkInterface)
+	    throws OperationFailedException {
+	if (channel == null) {
+	    throw new IllegalStateException("sACN receiver is not bound.");
+	}
+	try {
+	    channel.join(getMulticastGroup(universeNumber), networkInterface);
+	} catch (IOException IOE) {
+	    throw new OperationFailedException("Unable to join sACN universe "
+		    + universeNumber + ": " + IOE.getMessage());
+	}
+    }
+
+    /**
+     * Get the multicast group on which a universe is sent, which is
+     * 239.255.x.y where x and y are the high and low bytes of the universe.
+     * 
+     * @param universeNumber
+     *                The E1.31 universe, from 1 to 63999 inclusive.
+     * @return The multicast group address.
+     * @throws OperationFailedException
+     *                 The universe number is out of range.
+     */
+    public static InetAddress getMulticastGroup(final int universeNumber)
+	    throws OperationFailedException {
+	if ((universeNumber < 1)
+		|| (universeNumber > UniverseRegistry.MAX_UNIVERSE)) {
+	    throw new OperationFailedException("sACN universe "
+		    + universeNumber + " was not within the permissible "
+		    + "range of 1 to 63999 inclusive.");
+	}
+	try {
+	    return InetAddress.getByAddress(new byte[] { (byte) 239,
+		    (byte) 255, (byte) (universeNumber >> 8),
+		    (byte) universeNumber });
+	} catch (java.net.UnknownHostException UHE) {
+	    // Should not occur as the address is always four bytes long
+	    throw new OperationFailedException(UHE.getMessage());
+	}
+    }
+
+    /**
+     * Parse an E1.31 data packet in place and pass its payload to the
+     * matching Universe, if it comes from the source being followed for that
+     * universe. Anything else is counted and ignored.
+     * 
+     * @param packet
+     *                Buffer holding the packet between its position and
+     *                limit.
+     */
+    protected void handlePacket(final ByteBuffer packet) {
+	final int size = packet.remaining();
+	if ((size < DATA_OFFSET) || !hasPacketId(packet)
+		|| (packet.getInt(ROOT_VECTOR_OFFSET) != VECTOR_ROOT_E131_DATA)
+		|| (packet.getInt(FRAMING_VECTOR_OFFSET) != VECTOR_E131_DATA_PACKET)
+		|| (packet.get(DMP_VECTOR_OFFSET) != VECTOR_DMP_SET_PROPERTY)) {
+	    packetsIgnored++;
+	    return;
+	}
+	final int universeNumber = packet.getShort(UNIVERSE_OFFSET) & 0xFFFF;
+	final int options = packet.get(OPTIONS_OFFSET) & 0xFF;
+	final Universe universe = registry.getUniverse(universeNumber);
+	if ((universe == null) || ((options & OPTION_PREVIEW) != 0)) {
+	    packetsIgnored++;
+	    return;
+	}
+
+	// Check the payload before the packet may change any source state
+	final int count = (packet.getShort(COUNT_OFFSET) & 0xFFFF) - 1;
+	if ((count < 1) || (count > DMXFrame.MAX_SLOTS)
+		|| (size < DATA_OFFSET + count)) {
+	    packetsIgnored++;
+	    return;
+	}
+
+	final long now = System.currentTimeMillis();
+	final long cidHigh = packet.getLong(CID_OFFSET);
+	final long cidLow = packet.getLong(CID_OFFSET + 8);
+	final int source = findSource(cidHigh, cidLow, universeNumber);
+	if ((options & OPTION_TERMINATED) != 0) {
+	    if (source != -1) {
+		removeSource(source);
+	    }
+	    return;
+	}
+
+	final int sequence = packet.get(SEQUENCE_OFFSET) & 0xFF;
+	final int priority = packet.get(PRIORITY_OFFSET) & 0xFF;
+	int step = 1;
+	int slot = source;
+	if (slot == -1) {
+	    slot = addSource(cidHigh, cidLow, universeNumber);
+	    if (slot == -1) {
+		// Table full, so this source cannot be tracked
+		packetsIgnored++;
+		return;
+	    }
+	} else {
+	    // E1.31 section 6.7.2: a sequence at most 20 behind is stale
+	    final int difference = (byte) (sequence - sourceSequence[slot]);
+	    if ((difference <= 0) && (difference > -20)) {
+		packetsOutOfOrder++;
+		return;
+	    }
+	    if (difference > 0) {
+		step = difference;
+	    }
+	}
+	sourceSequence[slot] = sequence;
+	sourcePriority[slot] = priority;
+	sourceLastSeen[slot] = now;
+
+	// Only the highest priority source is followed
+	final int followed = universeSource[universeNumber];
+	if (followed != slot) {
+	    if ((followed != -1) && (sourcePriority[followed] >= priority)) {
+		packetsSuperseded++;
+		return;
+	    }
+	    universeSource[universeNumber] = slot;
+	    step = 1;
+	}
+
+	packet.position(DATA_OFFSET);
+	packet.get(frame.getData(), 0, count);
+	frame.setStartCode(packet.get(START_CODE_OFFSET) & 0xFF);
+	frame.setLength(count);
+	frameSequence[universeNumber] += step;
+	frame.setSequence(frameSequence[universeNumber]);
+	getSource(universe).setPriority(priority);
+	offerFrame(universe);
+    }
+
+    /**
+     * Forget any sources which have been silent for too long.
+     */
+    protected void tick() {
+	final long now = System.currentTimeMillis();
+	if (now < nextSweep) {
+	    return;
+	}
+	nextSweep = now + (SOURCE_TIMEOUT / 10);
+	for (int i = 0; i < sourceActive.length; i++) {
+	    if (sourceActive[i] && (now - sourceLastSeen[i] > SOURCE_TIMEOUT)) {
+		removeSource(i);
+	    }
+	}
+    }
+
+    private int findSource(final long cidHigh, final long cidLow,
+	    final int universeNumber) {
+	int i = universeFirstSource[universeNumber];
+	while (i != -1) {
+	    if ((sourceCidLow[i] == cidLow) && (sourceCidHigh[i] == cidHigh)) {
+		return i;
+	    }
+	    i = sourceNext[i];
+	}
+	return -1;
+    }
+
+    private int addSource(final long cidHigh, final long cidLow,
+	    final int universeNumber) {
+	if (universeSourceCount[universeNumber] >= MAX_SOURCES) {
+	    return -1;
+	}
+	if (freeSlot == -1) {
+	    growSources(sourceActive.length * 2);
+	}
+	final int slot = freeSlot;
+	freeSlot = sourceNext[slot];
+	sourceActive[slot] = true;
+	sourceCidHigh[slot] = cidHigh;
+	sourceCidLow[slot] = cidLow;
+	sourceUniverse[slot] = universeNumber;
+	sourceNext[slot] = universeFirstSource[universeNumber];
+	universeFirstSource[universeNumber] = slot;
+	universeSourceCount[universeNumber]++;
+	return slot;
+    }
+
+    /**
+     * Enlarge the source table, adding the new slots to the free list. Only
+     * done when a new source needs a slot, never for a packet of a known one.
+     */
+    private void growSources(final int size) {
+	final int old = sourceActive.length;
+	sourceActive = Arrays.copyOf(sourceActive, size);
+	sourceCidHigh = Arrays.copyOf(sourceCidHigh, size);
+	sourceCidLow = Arrays.copyOf(sourceCidLow, size);
+	sourceUniverse = Arrays.copyOf(sourceUniverse, size);
+	sourcePriority = Arrays.copyOf(sourcePriority, size);
+	sourceSequence = Arrays.copyOf(sourceSequence, size);
+	sourceLastSeen = Arrays.copyOf(sourceLastSeen, size);
+	sourceNext = Arrays.copyOf(sourceNext, size);
+	for (int i = size - 1; i >= old; i--) {
+	    sourceNext[i] = freeSlot;
+	    freeSlot = i;
+	}
+    }
+
+    private void removeSource(final int source) {
+	final int universeNumber = sourceUniverse[source];
+	// Unlink from the universe's list, then return to the free list
+	if (universeFirstSource[universeNumber] == source) {
+	    universeFirstSource[universeNumber] = sourceNext[source];
+	} else {
+	    int previous = universeFirstSource[universeNumber];
+	    while (sourceNext[previous] != source) {
+		previous = sourceNext[previous];
+	    }
+	    sourceNext[previous] = sourceNext[source];
+	}
+	universeSourceCount[universeNumber]--;
+	sourceActive[source] = false;
+	sourceNext[source] = freeSlot;
+	freeSlot = source;
+	if (universeSource[universeNumber] == source) {
+	    // Any remaining source may now take over
+	    universeSource[universeNumber] = -1;
+	    // Until one does, release the levels of the stream which ended
+	    final Universe universe = registry.getUniverse(universeNumber);
+	    if (universe != null) {
+		releaseSource(universe);
+	    }
+	}
+    }
+
+    private boolean hasPacketId(final ByteBuffer packet) {
+	for (int i = 0; i < PACKET_ID.length; i++) {
+	    if (packet.get(PACKET_ID_OFFSET + i) != PACKET_ID[i]) {
+		return false;
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * Get the number of packets dropped for arriving out of order.
+     * 
+     * @return The number of packets out of order.
+     */
+    public long getPacketsOutOfOrder() {
+	return packetsOutOfOrder;
+    }
+
+    /**
+     * Get the number of packets dropped because a source of higher or equal
+     * priority was being followed for their universe.
+     * 
+     * @return The number of packets superseded.
+     */
+    public long getPacketsSuperseded() {
+	return packetsSuperseded;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.dmx;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Published copy of the 512 levels of a Universe, which any thread may read
+ * without locks and without ever seeing a partly applied update.
+ * 
+ * The levels are packed eight to a word and guarded by a sequence lock: the
+ * writer makes the sequence odd, stores the words it changed and makes the
+ * sequence even again. A reader copies the levels it wants between two reads
+ * of the sequence, and tries again if the sequence was odd or moved. Writers
+ * are never blocked by readers.
+ * 
+ * @author chris
+ */
+public class SnapshotBuffer {
+
+    private static final int WORDS = DMXFrame.MAX_SLOTS / 8;
+
+    // Failed attempts to read after which a reader yields to the writer
+    private static final int RETRIES_BEFORE_YIELD = 100;
+
+    private final transient AtomicLongArray words = new AtomicLongArray(WORDS);
+
+    // Odd while an update is being published
+    private transient volatile int sequence = 0;
+
+    /**
+     * Creates a new instance of SnapshotBuffer, with every level zero.
+     */
+    public SnapshotBuffer() {
+	super();
+    }
+
+    /**
+     * Publish a range of levels as one update. Only one thread may publish
+     * at a time.
+     * 
+     * @param levels
+     *                All 512 levels, with channel 1 at index 0.
+     * @param first
+     *                The index of the first level changed.
+     * @param last
+     *                The index of the last level changed.
+     */
+    public void publish(final byte[] levels, final int first, final int last) {
+	final int lastWord = last >>> 3;
+	sequence = sequence + 1;
+	for (int w = first >>> 3; w <= lastWord; w++) {
+	    final int base = w << 3;
+	    long packed = 0;
+	    for (int b = 7; b >= 0; b--) {
+		packed = (packed << 8) | (levels[base + b] & 0xFF);
+	    }
+	    // Ordered after the odd sequence, and before the even one
+	    words.lazySet(w, packed);
+	}
+	sequence = sequence + 1;
+    }
+
+    /**
+     * Read a single level. A single level is always consistent, so this
+     * never retries.
+     * 
+     * @param index
+     *                The index of the level, from 0 to 511.
+     * @return The level, from 0 to 255.
+     */
+    public int get(final int index) {
+	return (int) (words.get(index >>> 3) >>> ((index & 7) << 3)) & 0xFF;
+    }
+
+    /**
+     * Copy a consistent range of levels, all from the same update.
+     * 
+     * @param dest
+     *                The array to copy the levels into.
+     * @param offset
+     *                The index within dest for the first level.
+     * @param first
+     *                The index of the first level to copy.
+     * @param count
+     *                The number of levels to copy.
+     * @return The version of the levels copied.
+     */
+    public int read(final byte[] dest, final int offset, final int first,
+	    final int count) {
+	int attempts = 0;
+	while (true) {
+	    final int before = sequence;
+	    if ((before & 1) == 0) {
+		int loaded = -1;
+		long word = 0;
+		for (int i = 0; i < count; i++) {
+		    final int index = first + i;
+		    if ((index >>> 3) != loaded) {
+			loaded = index >>> 3;
+			word = words.get(loaded);
+		    }
+		    dest[offset + i] = (byte) (word >>> ((index & 7) << 3));
+		}
+		if (sequence == before) {
+		    return before >>> 1;
+		}
+	    }
+	    attempts++;
+	    if (attempts == RETRIES_BEFORE_YIELD) {
+		Thread.yield();
+		attempts = 0;
+	    }
+	}
+    }
+
+    /**
+     * Get the version of the levels, which increases by one with every
+     * update published. Readers may compare versions to see whether
+     * anything has changed since they last looked.
+     * 
+     * @return The number of updates published.
+     */
+    public int getVersion() {
+	return sequence >>> 1;
+    }
+}
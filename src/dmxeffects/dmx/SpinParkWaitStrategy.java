@@ -0,0 +1,106 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.dmx;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * WaitStrategy which busy-spins for the lowest possible latency, falling back
+ * to short timed parks once the queue has been empty for a while. The producer
+ * unparks the consumer early when a frame is published.
+ * 
+ * @author chris
+ */
+public class SpinParkWaitStrategy implements WaitStrategy {
+
+    /**
+     * Default number of checks of the queue before parking.
+     */
+    public static final int DEFAULT_SPIN_TRIES = 10000;
+
+    /**
+     * Default length of each timed park, in nanoseconds.
+     */
+    public static final long DEFAULT_PARK_NANOS = 50000L;
+
+    private final transient int spinTries;
+
+    private final transient long parkNanos;
+
+    private transient volatile Thread waiter = null;
+
+    /**
+     * Create a new instance of this class with the default spin and park
+     * periods.
+     */
+    public SpinParkWaitStrategy() {
+	this(DEFAULT_SPIN_TRIES, DEFAULT_PARK_NANOS);
+    }
+
+    /**
+     * Create a new instance of this class.
+     * 
+     * @param spinTries
+     *                Number of times to check the queue before parking.
+     * @param parkNanos
+     *                Maximum time to park for, in nanoseconds, before
+     *                checking the queue again.
+     */
+    public SpinParkWaitStrategy(final int spinTries, final long parkNanos) {
+	super();
+	this.spinTries = spinTries;
+	this.parkNanos = parkNanos;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see dmxeffects.dmx.WaitStrategy#waitFor(dmxeffects.dmx.Drainable)
+     */
+    public void waitFor(final Drainable queue) throws InterruptedException {
+	int counter = spinTries;
+	while (queue.isEmpty()) {
+	    if (Thread.interrupted()) {
+		throw new InterruptedException();
+	    }
+	    if (counter > 0) {
+		counter--;
+	    } else {
+		waiter = Thread.currentThread();
+		if (queue.isEmpty()) {
+		    LockSupport.parkNanos(this, parkNanos);
+		}
+		waiter = null;
+	    }
+	}
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see dmxeffects.dmx.WaitStrategy#signal()
+     */
+    public void signal() {
+	final Thread parked = waiter;
+	if (parked != null) {
+	    LockSupport.unpark(parked);
+	}
+    }
+}
@@ -19,73 +19,81 @@
  */
 package dmxeffects.dmx;
 
-import com.trolltech.qt.core.QObject;
-import com.trolltech.qt.gui.QMessageBox;
-
-import dmxeffects.Main;
-import dmxeffects.OperationCancelledException;
-
 /**
- * Class to store the values within a DMX Universe.
+ * Class to store the values within a DMX Universe. Changes are reported to
+ * any registered UniverseListeners and AssociationListeners; the Universe has
+ * no dependency upon Qt, so may be used without a GUI.
+ * 
+ * Updates are applied by one thread at a time, and each is published as a
+ * whole to a SnapshotBuffer. The methods reading values may be called from any
+ * thread, never block an update and never see one partly applied.
  * 
  * @author chris
  */
-public class Universe extends QObject {
+public class Universe {
+
+    /**
+     * Number of the Universe used when none is specified.
+     */
+    public static final int DEFAULT_UNIVERSE = 1;
+
+    private final transient int universeNumber;
+
+    private final transient MergeEngine mergeEngine;
+
+    private final transient MergeSource localSource;
 
     // -- Internal data stores -- //
-    private int[] dmxValues;
+    // Levels being updated, guarded by writeLock. Unsigned, so read & 0xFF
+    private final transient byte[] dmxValues = new byte[DMXFrame.MAX_SLOTS];
 
-    private String[] dmxAssociations;
+    // Levels as last published, for reading from any thread
+    private final transient SnapshotBuffer snapshot = new SnapshotBuffer();
 
-    // -- Signals sent by this object -- //
-    /**
-     * Signal indicating a channel-value pair has updated. First Integer is
-     * the channel number. Second Integer is the channel value.
-     */
-    public Signal2<Integer, Integer> dmxValueUpdater = new Signal2<Integer, Integer>();
+    private final transient Object writeLock = new Object();
 
-    /**
-     * Signal indicating the removal of an association range. First Integer
-     * is the first channel number. Second Integer is the size of the range.
-     */
-    public Signal2<Integer, Integer> assocRemUpdater = new Signal2<Integer, Integer>();
+    // Owners of ranges of channels, guarded by associationLock
+    private final transient AssociationIndex associations = new AssociationIndex();
 
-    /**
-     * Signal indicating the update of an association. Integer is the
-     * channel number. String is the module name or an empty string if no
-     * module.
+    private final transient Object associationLock = new Object();
+
+    private transient volatile boolean fullRefresh = false;
+
+    // Channels changed by the frame currently being applied
+    private final transient ChannelSet changedChannels = new ChannelSet();
+
+    // Reused to report each frame to listeners, guarded by writeLock
+    private final transient FrameUpdate frameUpdate = new FrameUpdate();
+
+    // -- Listeners informed by this object -- //
+    /*
+     * Replaced, never modified, when a listener is added or removed so the
+     * listener thread can read them without locks.
      */
-    public Signal2<Integer, String> associationUpdater = new Signal2<Integer, String>();
+    private transient volatile UniverseListener[] listeners = new UniverseListener[0];
+
+    private transient volatile AssociationListener[] associationListeners = new AssociationListener[0];
+
+    // Handlers of particular channels, called only when those change
+    private final transient ChannelRouter router = new ChannelRouter();
 
     /** Creates a new instance of Universe */
     public Universe() {
-	dmxValues = new int[512];
-	/*
-	 * In theory a nicer way to do the associations would to be to store an
-	 * array containing objects with the following info: String - the name
-	 * of the association. int - the first channel of the associations. int -
-	 * the number of channels
-	 * 
-	 * This information is then taken and interpreted for any operations
-	 * that are performed on associations, ensuring that all the channels
-	 * for a particular association are removed if you remove one.
-	 */
-	dmxAssociations = new String[512];
-    }
-
-    public void setValue(Integer channelNum, Integer channelVal) {
-	int channelNumber = channelNum.intValue();
-	int channelValue = channelVal.intValue();
-	try {
-	    setValue(channelNumber, channelValue);
-	} catch (InvalidChannelNumberException ICNE) {
-	    System.err.println(ICNE.getMessage());
-	    ICNE.printStackTrace(System.err);
-	} catch (InvalidChannelValueException ICVE) {
-	    System.err.println(ICVE.getMessage());
-	    ICVE.printStackTrace(System.err);
-	}
+	this(DEFAULT_UNIVERSE);
+    }
 
+    /**
+     * Creates a new instance of Universe
+     * 
+     * @param universeNumber
+     *                The number identifying this Universe.
+     */
+    public Universe(final int universeNumber) {
+	super();
+	this.universeNumber = universeNumber;
+	mergeEngine = new MergeEngine();
+	localSource = mergeEngine.addSource(MergeEngine.LOCAL_SOURCE,
+		MergeSource.DEFAULT_PRIORITY);
     }
 
     /**
@@ -115,14 +123,338 @@ public class Universe extends QObject {
 		Validator.CHANNEL_VALUE_VALIDATION) == false) {
 	    throw new InvalidChannelValueException(channelValue);
 	}
-	// Perform the appropriate conversion to zero-based indexing and store
-	// the data.
-	dmxValues[channelNumber - 1] = channelValue;
+	synchronized (writeLock) {
+	    // Perform the appropriate conversion to zero-based indexing and
+	    // store the data.
+	    final int index = channelNumber - 1;
+	    final boolean changed = (dmxValues[index] & 0xFF) != channelValue;
+	    dmxValues[index] = (byte) channelValue;
+	    if (changed) {
+		snapshot.publish(dmxValues, index, index);
+	    }
+
+	    // Inform listening objects that there has been a new value added.
+	    if (changed || fullRefresh) {
+		changedChannels.clear();
+		changedChannels.add(channelNumber);
+		fireValuesChanged(listeners);
+	    }
+	}
+    }
+
+    /**
+     * Method to apply a whole frame of values to the Universe as one unit.
+     * Frames shorter than 512 channels only update the channels they hold,
+     * leaving the remainder unchanged. Listeners are only informed of the
+     * channels which have changed, unless full refresh mode is enabled.
+     * 
+     * @param frame
+     *                The frame to apply. Its start code should be the null
+     *                start code.
+     * @throws InvalidChannelNumberException
+     *                 Exception for when the frame length does not follow
+     *                 the specification.
+     */
+    public void setFrame(final DMXFrame frame)
+	    throws InvalidChannelNumberException {
+	final int length = frame.getLength();
+	if (Validator.validate(length, Validator.CHANNEL_NUMBER_VALIDATION)
+		== false) {
+	    throw new InvalidChannelNumberException(length);
+	}
+	applyRange(frame.getData(), 0, 0, length);
+    }
+
+    /**
+     * Method to apply a range of values to the Universe as one unit, leaving
+     * the remainder unchanged. The range is validated once, rather than per
+     * channel. Listeners are only informed of the channels which have
+     * changed, unless full refresh mode is enabled.
+     * 
+     * @param firstChannel
+     *                The channel number of the first value, from 1 to 512.
+     * @param values
+     *                The values to apply, unsigned.
+     * @param offset
+     *                The index within values of the first value.
+     * @param count
+     *                The number of values to apply.
+     * @throws InvalidChannelNumberException
+     *                 Exception for when the range does not lie within
+     *                 channels 1 to 512.
+     */
+    public void setRange(final int firstChannel, final byte[] values,
+	    final int offset, final int count)
+	    throws InvalidChannelNumberException {
+	validateRange(firstChannel, count);
+	if ((offset < 0) || (offset + count > values.length)) {
+	    throw new IndexOutOfBoundsException("Values " + offset + " to "
+		    + (offset + count - 1) + " are not within the array.");
+	}
+	applyRange(values, offset, firstChannel - 1, count);
+    }
+
+    /**
+     * Store a range of values, informing listeners of those which changed.
+     */
+    private void applyRange(final byte[] data, final int offset,
+	    final int first, final int count) {
+	synchronized (writeLock) {
+	    final boolean refresh = fullRefresh;
+	    final UniverseListener[] current = listeners;
+	    if ((current.length == 0) && router.isEmpty()) {
+		// Nobody to tell what changed, so simply store the values.
+		int start = 0;
+		while ((start < count)
+			&& (data[offset + start] == dmxValues[first + start])) {
+		    start++;
+		}
+		if (start == count) {
+		    // Unchanged, so there is no new snapshot to publish
+		    return;
+		}
+		int end = count - 1;
+		while (data[offset + end] == dmxValues[first + end]) {
+		    end--;
+		}
+		System.arraycopy(data, offset + start, dmxValues, first + start,
+			end - start + 1);
+		snapshot.publish(dmxValues, first + start, first + end);
+		return;
+	    }
+	    changedChannels.clear();
+	    int firstChanged = -1;
+	    int lastChanged = -1;
+	    for (int i = 0; i < count; i++) {
+		final byte value = data[offset + i];
+		if (dmxValues[first + i] != value) {
+		    dmxValues[first + i] = value;
+		    if (firstChanged == -1) {
+			firstChanged = first + i;
+		    }
+		    lastChanged = first + i;
+		} else if (!refresh) {
+		    continue;
+		}
+		changedChannels.add(first + i + 1);
+	    }
+	    if (firstChanged != -1) {
+		snapshot.publish(dmxValues, firstChanged, lastChanged);
+	    }
+	    fireValuesChanged(current);
+	}
+    }
+
+    /**
+     * Method to apply selected channels of a frame to the Universe as one
+     * unit, leaving the remainder unchanged. This costs only as much as the
+     * channels selected, so suits sparse updates. Listeners are only
+     * informed of the selected channels which have changed, unless full
+     * refresh mode is enabled.
+     * 
+     * @param frame
+     *                The frame holding the values to apply.
+     * @param channels
+     *                The channels of the frame to apply.
+     */
+    public void setChannels(final DMXFrame frame, final ChannelSet channels) {
+	final byte[] data = frame.getData();
+	synchronized (writeLock) {
+	    final boolean refresh = fullRefresh;
+	    final UniverseListener[] current = listeners;
+	    changedChannels.clear();
+	    int firstChanged = -1;
+	    int lastChanged = -1;
+	    for (int c = channels.next(1); c != -1; c = channels.next(c + 1)) {
+		final byte value = data[c - 1];
+		if (dmxValues[c - 1] != value) {
+		    dmxValues[c - 1] = value;
+		    if (firstChanged == -1) {
+			firstChanged = c - 1;
+		    }
+		    lastChanged = c - 1;
+		} else if (!refresh) {
+		    continue;
+		}
+		changedChannels.add(c);
+	    }
+	    if (firstChanged != -1) {
+		snapshot.publish(dmxValues, firstChanged, lastChanged);
+	    }
+	    fireValuesChanged(current);
+	}
+    }
+
+    /**
+     * Call the handlers routed each channel changed by the update just
+     * published, then inform listeners of each changed channel and of the
+     * update as a whole.
+     */
+    private void fireValuesChanged(final UniverseListener[] current) {
+	router.dispatch(universeNumber, changedChannels, dmxValues);
+	if (current.length == 0) {
+	    return;
+	}
+	for (int c = changedChannels.next(1); c != -1; c = changedChannels
+		.next(c + 1)) {
+	    final int channelValue = dmxValues[c - 1] & 0xFF;
+	    for (int l = 0; l < current.length; l++) {
+		current[l].onChannel(universeNumber, c, channelValue);
+	    }
+	}
+	fireFrameApplied(current);
+    }
+
+    /**
+     * Inform listeners of the channels changed by the update just applied,
+     * if there were any.
+     */
+    private void fireFrameApplied(final UniverseListener[] current) {
+	if (changedChannels.isEmpty() || (current.length == 0)) {
+	    return;
+	}
+	frameUpdate.set(dmxValues, changedChannels);
+	for (int l = 0; l < current.length; l++) {
+	    current[l].onFrame(universeNumber, frameUpdate);
+	}
+    }
+
+    /**
+     * Get the routing table through which handlers subscribe to particular
+     * channels of this Universe. Handlers are called only when their own
+     * channels change, so this is preferred to a UniverseListener wherever
+     * only a few channels are of interest.
+     * 
+     * @return The ChannelRouter of this Universe.
+     */
+    public ChannelRouter getRouter() {
+	return router;
+    }
+
+    /**
+     * Register a listener to be informed of changes to the values of this
+     * Universe. Every listener is informed of every change.
+     * 
+     * @param listener
+     *                The listener to add.
+     */
+    public synchronized void addUniverseListener(
+	    final UniverseListener listener) {
+	final UniverseListener[] current = listeners;
+	final UniverseListener[] replacement = new UniverseListener[current.length + 1];
+	System.arraycopy(current, 0, replacement, 0, current.length);
+	replacement[current.length] = listener;
+	listeners = replacement;
+    }
+
+    /**
+     * Stop informing a listener of changes to the values of this Universe.
+     * 
+     * @param listener
+     *                The listener to remove.
+     */
+    public synchronized void removeUniverseListener(
+	    final UniverseListener listener) {
+	final UniverseListener[] current = listeners;
+	for (int i = 0; i < current.length; i++) {
+	    if (current[i] == listener) {
+		final UniverseListener[] replacement = new UniverseListener[current.length - 1];
+		System.arraycopy(current, 0, replacement, 0, i);
+		System.arraycopy(current, i + 1, replacement, i,
+			current.length - i - 1);
+		listeners = replacement;
+		return;
+	    }
+	}
+    }
+
+    /**
+     * Register a listener to be informed of changes to the associations of
+     * this Universe.
+     * 
+     * @param listener
+     *                The listener to add.
+     */
+    public synchronized void addAssociationListener(
+	    final AssociationListener listener) {
+	final AssociationListener[] current = associationListeners;
+	final AssociationListener[] replacement = new AssociationListener[current.length + 1];
+	System.arraycopy(current, 0, replacement, 0, current.length);
+	replacement[current.length] = listener;
+	associationListeners = replacement;
+    }
+
+    /**
+     * Stop informing a listener of changes to the associations of this
+     * Universe.
+     * 
+     * @param listener
+     *                The listener to remove.
+     */
+    public synchronized void removeAssociationListener(
+	    final AssociationListener listener) {
+	final AssociationListener[] current = associationListeners;
+	for (int i = 0; i < current.length; i++) {
+	    if (current[i] == listener) {
+		final AssociationListener[] replacement = new AssociationListener[current.length - 1];
+		System.arraycopy(current, 0, replacement, 0, i);
+		System.arraycopy(current, i + 1, replacement, i,
+			current.length - i - 1);
+		associationListeners = replacement;
+		return;
+	    }
+	}
+    }
+
+    /**
+     * Get the number identifying this Universe.
+     * 
+     * @return The Universe number.
+     */
+    public int getUniverseNumber() {
+	return universeNumber;
+    }
+
+    /**
+     * Get the queue through which frames of local input, such as from the
+     * Generator, reach this Universe.
+     * 
+     * @return The InputQueue of the local source of this Universe.
+     */
+    public InputQueue getInputQueue() {
+	return localSource.getInputQueue();
+    }
 
-	// Inform listening objects that there has been a new value added.
-	dmxValueUpdater.emit(new Integer(channelNumber), new Integer(
-		channelValue));
+    /**
+     * Get the merge stage combining the sources which feed this Universe.
+     * Each further source should be added here, and feed its own queue.
+     * 
+     * @return The MergeEngine of this Universe.
+     */
+    public MergeEngine getMergeEngine() {
+	return mergeEngine;
+    }
 
+    /**
+     * Enable or disable full refresh mode. By default listeners are only
+     * informed of channels whose value has changed; in full refresh mode
+     * every channel of every applied frame is signalled, for consumers that
+     * need to see each frame regardless of whether it differs.
+     * 
+     * @param fullRefresh
+     *                True to signal every channel of every frame.
+     */
+    public void setFullRefresh(final boolean fullRefresh) {
+	this.fullRefresh = fullRefresh;
+    }
+
+    /**
+     * Check whether full refresh mode is enabled.
+     * 
+     * @return True if every channel of every frame is signalled.
+     */
+    public boolean getFullRefresh() {
+	return fullRefresh;
     }
 
     /**
@@ -141,16 +473,77 @@ public class Universe extends QObject {
 		Validator.CHANNEL_NUMBER_VALIDATION) == false) {
 	    throw new InvalidChannelNumberException(channelNumber);
 	} else {
-	    int returnValue = 0;
-	    try {
-		// Perform the appropriate conversion to zero-based indexing and
-		// return the data.
-		returnValue = dmxValues[channelNumber - 1];
-	    } catch (java.lang.NullPointerException e) {
-		// No value set at present, return 0.
-		returnValue = 0;
-	    }
-	    return returnValue;
+	    // Perform the appropriate conversion to zero-based indexing and
+	    // return the published data.
+	    return snapshot.get(channelNumber - 1);
+	}
+    }
+
+    /**
+     * Copy every value of the Universe into a frame, as a full frame of level
+     * data. The values are a consistent snapshot, all from the same update.
+     * 
+     * @param frame
+     *                The frame to copy the values into.
+     * @return The version of the values copied.
+     */
+    public int copyFrame(final DMXFrame frame) {
+	frame.setPatch(false);
+	frame.setStartCode(DMXFrame.NULL_START_CODE);
+	frame.setLength(DMXFrame.MAX_SLOTS);
+	return snapshot.read(frame.getData(), 0, 0, DMXFrame.MAX_SLOTS);
+    }
+
+    /**
+     * Get the version of the values, which increases with every update
+     * applied. Readers may compare versions to see whether anything has
+     * changed since they last looked.
+     * 
+     * @return The version of the values.
+     */
+    public int getVersion() {
+	return snapshot.getVersion();
+    }
+
+    /**
+     * Copy a range of values of the Universe into an array. The range is
+     * validated once, rather than per channel, and the values are a
+     * consistent snapshot, all from the same update.
+     * 
+     * @param firstChannel
+     *                The channel number of the first value, from 1 to 512.
+     * @param values
+     *                The array to copy the values into, unsigned.
+     * @param offset
+     *                The index within values for the first value.
+     * @param count
+     *                The number of values to copy.
+     * @return The version of the values copied.
+     * @throws InvalidChannelNumberException
+     *                 Exception for when the range does not lie within
+     *                 channels 1 to 512.
+     */
+    public int copyRange(final int firstChannel, final byte[] values,
+	    final int offset, final int count)
+	    throws InvalidChannelNumberException {
+	validateRange(firstChannel, count);
+	return snapshot.read(values, offset, firstChannel - 1, count);
+    }
+
+    /**
+     * Check that a range of channels lies within 1 to 512 and holds at least
+     * one channel.
+     */
+    private static void validateRange(final int firstChannel, final int count)
+	    throws InvalidChannelNumberException {
+	if (Validator.validate(firstChannel,
+		Validator.CHANNEL_NUMBER_VALIDATION) == false) {
+	    throw new InvalidChannelNumberException(firstChannel);
+	}
+	if ((count < 1)
+		|| (Validator.validate(firstChannel + count - 1,
+			Validator.CHANNEL_NUMBER_VALIDATION) == false)) {
+	    throw new InvalidChannelNumberException(firstChannel + count - 1);
 	}
     }
 
@@ -167,26 +560,42 @@ public class Universe extends QObject {
      *                end.
      * @throws InvalidChannelNumberException
      *                 The channelNumber doesn't meet the specification.
-     * @throws OperationCancelledException
      */
     public void setAssociation(int channelNumber, String associatedElement)
-	    throws InvalidChannelNumberException, OperationCancelledException {
-	// Perform validation upon the channelNumber information
-	if (Validator.validate(channelNumber,
-		Validator.CHANNEL_NUMBER_VALIDATION) == false) {
-	    throw new InvalidChannelNumberException(channelNumber);
-	}
+	    throws InvalidChannelNumberException {
+	setAssociation(channelNumber, 1, associatedElement);
+    }
 
-	// Check if this is already associated
-	if (dmxAssociations[channelNumber - 1] != null) {
-	    // Confirm the deletion of the pre-existing association
-	    removeAssociation(channelNumber, 1);
+    /**
+     * Associate a range of channels with an element, removing them from any
+     * element they were associated with before. Listeners are told of each
+     * range removed and then of the new association.
+     * 
+     * @param firstChannel
+     *                The first channel of the range.
+     * @param count
+     *                The number of channels in the range.
+     * @param associatedElement
+     *                A String naming the element.
+     * @throws InvalidChannelNumberException
+     *                 The range doesn't meet the specification.
+     */
+    public void setAssociation(final int firstChannel, final int count,
+	    final String associatedElement)
+	    throws InvalidChannelNumberException {
+	validateRange(firstChannel, count);
+	final int lastChannel = firstChannel + count - 1;
+	Association[] overlapped;
+	synchronized (associationLock) {
+	    overlapped = associations.assign(firstChannel, lastChannel,
+		    associatedElement);
+	}
+	fireAssociationsRemoved(overlapped, firstChannel, lastChannel);
+	final AssociationListener[] current = associationListeners;
+	for (int l = 0; l < current.length; l++) {
+	    current[l].associationChanged(firstChannel, count,
+		    associatedElement);
 	}
-	// Change to zero-based indexing, and store the data.
-	dmxAssociations[channelNumber - 1] = associatedElement;
-
-	// Update the display
-	associationUpdater.emit(new Integer(channelNumber), associatedElement);
     }
 
     /**
@@ -203,60 +612,147 @@ public class Universe extends QObject {
      */
     public String getAssociation(int channelNumber)
 	    throws InvalidChannelNumberException {
+	final Association association = getAssociationRange(channelNumber);
+	if (association == null) {
+	    return null;
+	}
+	return association.getOwner();
+    }
+
+    /**
+     * Get the whole range of channels associated with the same element as
+     * the specified channel.
+     * 
+     * @param channelNumber
+     *                The channel number.
+     * @return The Association holding the channel, or null if there is none.
+     * @throws InvalidChannelNumberException
+     *                 The channelNumber doesn't meet the specification.
+     */
+    public Association getAssociationRange(final int channelNumber)
+	    throws InvalidChannelNumberException {
 	if (Validator.validate(channelNumber,
 		Validator.CHANNEL_NUMBER_VALIDATION) == false) {
 	    throw new InvalidChannelNumberException(channelNumber);
-	} else {
-	    String returnString = null;
-	    try {
-		returnString = dmxAssociations[channelNumber - 1];
-	    } catch (java.lang.NullPointerException e) {
-		// No data, return the null string.
-		returnString = null;
+	}
+	synchronized (associationLock) {
+	    return associations.get(channelNumber);
+	}
+    }
+
+    /**
+     * Get the ranges of channels associated with an element.
+     * 
+     * @param associatedElement
+     *                A String naming the element.
+     * @return The element's Associations, in channel order.
+     */
+    public Association[] getAssociations(final String associatedElement) {
+	synchronized (associationLock) {
+	    return associations.getRanges(associatedElement);
+	}
+    }
+
+    /**
+     * Find the associations which overlap a range of channels, such as one
+     * about to be given to a new fixture.
+     * 
+     * @param firstChannel
+     *                The first channel of the range.
+     * @param count
+     *                The number of channels in the range.
+     * @return The overlapping Associations, in channel order.
+     * @throws InvalidChannelNumberException
+     *                 The range doesn't meet the specification.
+     */
+    public Association[] findOverlaps(final int firstChannel, final int count)
+	    throws InvalidChannelNumberException {
+	validateRange(firstChannel, count);
+	synchronized (associationLock) {
+	    return associations.getOverlaps(firstChannel, firstChannel
+		    + count - 1);
+	}
+    }
+
+    /**
+     * Move every channel associated with one element to another, such as
+     * when a module is renamed or replaced.
+     * 
+     * @param associatedElement
+     *                A String naming the current element.
+     * @param newElement
+     *                A String naming the new element.
+     */
+    public void reassignAssociations(final String associatedElement,
+	    final String newElement) {
+	Association[] moved;
+	synchronized (associationLock) {
+	    moved = associations.reassign(associatedElement, newElement);
+	}
+	final AssociationListener[] current = associationListeners;
+	for (int i = 0; i < moved.length; i++) {
+	    // The current element is told first that it has lost the channels
+	    for (int l = 0; l < current.length; l++) {
+		current[l].associationsRemoved(moved[i].getFirstChannel(),
+			moved[i].getCount());
+	    }
+	    for (int l = 0; l < current.length; l++) {
+		current[l].associationChanged(moved[i].getFirstChannel(),
+			moved[i].getCount(), newElement);
 	    }
-	    return returnString;
 	}
     }
 
+    /**
+     * Remove the associations of a range of channels. Any confirmation
+     * required from the user should be sought before calling this.
+     * 
+     * @param channelNumber
+     *                The first channel of the range.
+     * @param numToDelete
+     *                The number of channels in the range.
+     * @throws InvalidChannelNumberException
+     *                 The range doesn't meet the specification.
+     */
     public void removeAssociation(int channelNumber, int numToDelete)
-	    throws InvalidChannelNumberException, OperationCancelledException {
-	if (Validator.validate(channelNumber,
-		Validator.CHANNEL_NUMBER_VALIDATION) == false) {
-	    throw new InvalidChannelNumberException(channelNumber);
-	} else {
-	    // Confirm that they wish to delete all the elements.
-	    String confirmMessage;
-	    if (numToDelete > 1) {
-		confirmMessage = "Please confirm that you wish to delete the "
-			+ "associations for channels between "
-			+ String.valueOf(channelNumber) + " and "
-			+ String.valueOf(channelNumber + numToDelete) + ".";
-	    } else {
-		confirmMessage = "Please confirm that you wish to delete the "
-			+ "association for channel "
-			+ String.valueOf(channelNumber) + ".";
-	    }
-	    QMessageBox.StandardButtons options = new QMessageBox.StandardButtons(
-		    QMessageBox.StandardButton.Yes,
-		    QMessageBox.StandardButton.No);
-	    QMessageBox.StandardButton response = QMessageBox.question(Main
-		    .getInstance().getDMX().getWidget(), "Confirm deletion",
-		    confirmMessage, options, QMessageBox.StandardButton.Yes);
-	    if (response.equals(QMessageBox.StandardButton.Yes)) {
-		// Confirmed
-		// Do remove
-		assocRemUpdater.emit(new Integer(channelNumber), new Integer(
-			numToDelete));
-		for (int i = 0; i < numToDelete; i++) {
-		    // Send out a signal indicating which range of channels
-		    // has been removed.
-		    dmxAssociations[channelNumber + i - 1] = null;
-		    associationUpdater.emit(new Integer(channelNumber), "");
-		}
-	    } else {
-		// Abort
-		throw new OperationCancelledException(
-			"The user aborted the operation.");
+	    throws InvalidChannelNumberException {
+	validateRange(channelNumber, numToDelete);
+	final int lastChannel = channelNumber + numToDelete - 1;
+	Association[] removed;
+	synchronized (associationLock) {
+	    removed = associations.remove(channelNumber, lastChannel);
+	}
+	fireAssociationsRemoved(removed, channelNumber, lastChannel);
+    }
+
+    /**
+     * Remove every association of an element.
+     * 
+     * @param associatedElement
+     *                A String naming the element.
+     */
+    public void removeAssociations(final String associatedElement) {
+	Association[] removed;
+	synchronized (associationLock) {
+	    removed = associations.removeOwner(associatedElement);
+	}
+	fireAssociationsRemoved(removed, 1, DMXFrame.MAX_SLOTS);
+    }
+
+    /**
+     * Tell listeners of the parts of some ranges lying between two channels
+     * which have been removed.
+     */
+    private void fireAssociationsRemoved(final Association[] removed,
+	    final int firstChannel, final int lastChannel) {
+	final AssociationListener[] current = associationListeners;
+	for (int i = 0; i < removed.length; i++) {
+	    final int first = Math.max(firstChannel, removed[i]
+		    .getFirstChannel());
+	    final int last = Math.min(lastChannel, removed[i]
+		    .getLastChannel());
+	    for (int l = 0; l < current.length; l++) {
+		current[l].associationsRemoved(first, last - first + 1);
 	    }
 	}
     }
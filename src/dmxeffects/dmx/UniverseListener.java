@@ -0,0 +1,65 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.dmx;
+
+/**
+ * Interface for objects wishing to be informed of changes to the values held
+ * by a Universe.
+ * 
+ * Methods are called on the thread applying the change, which is usually a
+ * DMXInput listener thread. Implementations must therefore be quick and thread
+ * safe, handing any lengthy work, such as updating a GUI, to another thread.
+ * Values are passed as primitives, and the FrameUpdate is reused, so no
+ * objects are created for each frame.
+ * 
+ * @author chris
+ */
+public interface UniverseListener {
+
+    /**
+     * Handle a change to the value of a single channel. This is only called
+     * for channels whose value has changed, unless full refresh mode is
+     * enabled.
+     * 
+     * @param universeNumber
+     *                The number of the Universe holding the channel.
+     * @param channelNumber
+     *                The channel number, from 1 to 512.
+     * @param channelValue
+     *                The new value of the channel, from 0 to 255.
+     */
+    void onChannel(int universeNumber, int channelNumber, int channelValue);
+
+    /**
+     * Handle a frame having been applied, once per frame in which at least
+     * one channel changed (or every frame, in full refresh mode). This is
+     * called after onChannel has been called for each channel.
+     * 
+     * The FrameUpdate is reused for the next frame, so is only valid for the
+     * duration of the call. A listener keeping it must take a copy.
+     * 
+     * @param universeNumber
+     *                The number of the Universe.
+     * @param frame
+     *                All channel values, and the set of channels that
+     *                changed.
+     */
+    void onFrame(int universeNumber, FrameUpdate frame);
+}
@@ -0,0 +1,170 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.dmx;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Registry of independently addressable Universes. Each Universe has its own
+ * InputQueue, and the Universes are partitioned between a pool of DMXInput
+ * listeners, one per processor core by default, so that input for different
+ * Universes is processed in parallel.
+ * 
+ * @author chris
+ */
+public class UniverseRegistry {
+
+    /**
+     * Lowest permissible Universe number.
+     */
+    public static final int MIN_UNIVERSE = 0;
+
+    /**
+     * Highest permissible Universe number.
+     */
+    public static final int MAX_UNIVERSE = 63999;
+
+    // Indexed directly by Universe number, so lookups need no locking
+    private final transient AtomicReferenceArray<Universe> universes = new AtomicReferenceArray<Universe>(
+	    MAX_UNIVERSE + 1);
+
+    private final transient DMXInput[] workers;
+
+    private transient int universeCount = 0;
+
+    private transient boolean started = false;
+
+    /**
+     * Creates a new instance of UniverseRegistry with one listener per
+     * available processor.
+     */
+    public UniverseRegistry() {
+	this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new instance of UniverseRegistry
+     * 
+     * @param workerCount
+     *                The number of listener threads to share the Universes
+     *                between.
+     */
+    public UniverseRegistry(final int workerCount) {
+	super();
+	if (workerCount < 1) {
+	    throw new IllegalArgumentException("At least one listener is "
+		    + "required, " + workerCount + " were requested.");
+	}
+	final String strategy = System.getProperty(
+		InputQueue.WAIT_STRATEGY_PROPERTY, WaitStrategy.BLOCKING);
+	workers = new DMXInput[workerCount];
+	for (int i = 0; i < workerCount; i++) {
+	    workers[i] = new DMXInput(InputQueue.createWaitStrategy(strategy));
+	}
+    }
+
+    /**
+     * Create a new Universe and assign it to one of the listeners.
+     * 
+     * @param universeNumber
+     *                The number of the Universe to create, from 0 to 63999
+     *                inclusive.
+     * @return The new Universe.
+     * @throws IllegalArgumentException
+     *                 The number is out of range or already in use.
+     */
+    public synchronized Universe createUniverse(final int universeNumber) {
+	if ((universeNumber < MIN_UNIVERSE) || (universeNumber > MAX_UNIVERSE)) {
+	    throw new IllegalArgumentException("Universe number "
+		    + universeNumber + " was not within the permissible range "
+		    + "of 0 to 63999 inclusive.");
+	}
+	if (universes.get(universeNumber) != null) {
+	    throw new IllegalArgumentException("Universe " + universeNumber
+		    + " already exists.");
+	}
+	final Universe universe = new Universe(universeNumber);
+	// Spread Universes evenly across the listeners in creation order
+	workers[universeCount % workers.length].addUniverse(universe);
+	universes.set(universeNumber, universe);
+	universeCount++;
+	return universe;
+    }
+
+    /**
+     * Get a Universe by number.
+     * 
+     * @param universeNumber
+     *                The number of the Universe.
+     * @return The Universe, or null if it does not exist.
+     */
+    public Universe getUniverse(final int universeNumber) {
+	if ((universeNumber < MIN_UNIVERSE) || (universeNumber > MAX_UNIVERSE)) {
+	    return null;
+	}
+	return universes.get(universeNumber);
+    }
+
+    /**
+     * Get the number of Universes in the registry.
+     * 
+     * @return The number of Universes.
+     */
+    public synchronized int getUniverseCount() {
+	return universeCount;
+    }
+
+    /**
+     * Get the listeners between which the Universes are shared.
+     * 
+     * @return The listeners.
+     */
+    public DMXInput[] getWorkers() {
+	return workers.clone();
+    }
+
+    /**
+     * Start the listener threads. Calling this more than once has no
+     * effect.
+     */
+    public synchronized void start() {
+	if (started) {
+	    return;
+	}
+	for (int i = 0; i < workers.length; i++) {
+	    final Thread listenerThread = new Thread(workers[i],
+		    "DMX Listener " + (i + 1));
+	    listenerThread.setDaemon(true);
+	    // Updates and module dispatch run here, ahead of the GUI
+	    listenerThread.setPriority(Thread.MAX_PRIORITY);
+	    listenerThread.start();
+	}
+	started = true;
+    }
+
+    /**
+     * Check whether the listener threads have been started.
+     * 
+     * @return True if the listeners are running.
+     */
+    public synchronized boolean isStarted() {
+	return started;
+    }
+}
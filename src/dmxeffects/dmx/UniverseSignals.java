@@ -0,0 +1,103 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.dmx;
+
+import com.trolltech.qt.core.QObject;
+
+/**
+ * Qt adapter for a Universe, re-sending the changes to its associations as
+ * signals. This lets GUI objects connect to a Universe as before, with Qt
+ * queuing each change across to the GUI thread, while the Universe itself does
+ * not depend upon Qt.
+ * 
+ * Channel values are not signalled. The GUI polls the Universe's snapshot at
+ * its own rate through a UniverseTableModel, so its cost does not grow with
+ * the rate of input.
+ * 
+ * @author chris
+ */
+public class UniverseSignals extends QObject implements AssociationListener {
+
+    private final transient Universe universe;
+
+    // -- Signals sent by this object -- //
+    /**
+     * Signal indicating the removal of an association range. First Integer
+     * is the first channel number. Second Integer is the size of the range.
+     */
+    public Signal2<Integer, Integer> assocRemUpdater = new Signal2<Integer, Integer>();
+
+    /**
+     * Signal indicating the update of an association range. First Integer
+     * is the first channel number. Second Integer is the size of the range.
+     * String is the module name.
+     */
+    public Signal3<Integer, Integer, String> associationUpdater = new Signal3<Integer, Integer, String>();
+
+    /**
+     * Creates a new instance of UniverseSignals, listening to a Universe.
+     * 
+     * @param universe
+     *                The Universe whose changes are to be signalled.
+     */
+    public UniverseSignals(final Universe universe) {
+	super();
+	this.universe = universe;
+	universe.addAssociationListener(this);
+    }
+
+    /**
+     * Stop listening to the Universe.
+     */
+    public void detach() {
+	universe.removeAssociationListener(this);
+    }
+
+    /**
+     * Get the Universe whose changes are signalled.
+     * 
+     * @return The Universe.
+     */
+    public Universe getUniverse() {
+	return universe;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see dmxeffects.dmx.AssociationListener#associationChanged(int, int,
+     *      java.lang.String)
+     */
+    public void associationChanged(final int firstChannel, final int count,
+	    final String association) {
+	associationUpdater.emit(Integer.valueOf(firstChannel), Integer
+		.valueOf(count), association);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see dmxeffects.dmx.AssociationListener#associationsRemoved(int, int)
+     */
+    public void associationsRemoved(final int firstChannel, final int count) {
+	assocRemUpdater.emit(Integer.valueOf(firstChannel), Integer
+		.valueOf(count));
+    }
+}
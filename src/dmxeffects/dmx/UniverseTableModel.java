@@ -0,0 +1,306 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.dmx;
+
+import com.trolltech.qt.core.QModelIndex;
+import com.trolltech.qt.core.QTimer;
+import com.trolltech.qt.core.Qt;
+import com.trolltech.qt.core.Qt.ItemFlag;
+import com.trolltech.qt.gui.QAbstractTableModel;
+
+/**
+ * Table model presenting the channels of a Universe, with their current
+ * values and associations, for display in a QTableView.
+ * 
+ * Values are not pushed to the model as they change. Instead a timer samples
+ * the Universe's snapshot at the refresh rate, and dataChanged is sent only
+ * for the runs of rows whose values differ from those last shown. The work
+ * done by the GUI thread therefore depends upon the refresh rate and not upon
+ * the rate of DMX input, and no objects are created for each value.
+ * 
+ * @author chris
+ */
+public class UniverseTableModel extends QAbstractTableModel {
+
+    /**
+     * Refresh rate used when none is specified, in Hz.
+     */
+    public static final int DEFAULT_REFRESH_RATE = 25;
+
+    /**
+     * Column holding the channel number.
+     */
+    public static final int CHANNEL_COLUMN = 0;
+
+    /**
+     * Column holding the current value.
+     */
+    public static final int VALUE_COLUMN = 1;
+
+    /**
+     * Column holding the associated element.
+     */
+    public static final int ASSOCIATION_COLUMN = 2;
+
+    private static final int COLUMNS = 3;
+
+    // Text of each number shown, so that painting creates no Strings
+    private static final String[] NUMBERS = new String[DMXFrame.MAX_SLOTS + 1];
+
+    static {
+	for (int i = 0; i < NUMBERS.length; i++) {
+	    NUMBERS[i] = String.valueOf(i);
+	}
+    }
+
+    private final transient Universe universe;
+
+    private final transient String[] headers;
+
+    // Values as last shown, and as last sampled
+    private final transient byte[] shownValues = new byte[DMXFrame.MAX_SLOTS];
+
+    private final transient byte[] latestValues = new byte[DMXFrame.MAX_SLOTS];
+
+    private transient int shownVersion = -1;
+
+    private final transient QTimer refreshTimer;
+
+    private transient int refreshRate = 0;
+
+    /**
+     * Signal indicating the user has edited an association. Integer is the
+     * channel number. String is the new association. The Universe is not
+     * changed, so that the receiver may seek confirmation first.
+     */
+    public Signal2<Integer, String> associationEdited = new Signal2<Integer, String>();
+
+    /**
+     * Creates a new instance of UniverseTableModel, refreshing at the
+     * default rate.
+     * 
+     * @param universe
+     *                The Universe to present.
+     */
+    public UniverseTableModel(final Universe universe) {
+	super();
+	this.universe = universe;
+	headers = new String[] { tr("DMX Channel"), tr("Current Value"),
+		tr("Associated Element") };
+	refreshTimer = new QTimer(this);
+	refreshTimer.timeout.connect(this, "refresh()");
+	setRefreshRate(DEFAULT_REFRESH_RATE);
+    }
+
+    /**
+     * Set how often the values shown are refreshed.
+     * 
+     * @param refreshRate
+     *                The number of refreshes per second, or 0 to stop
+     *                refreshing.
+     */
+    public void setRefreshRate(final int refreshRate) {
+	if (refreshRate < 0) {
+	    throw new IllegalArgumentException("Refresh rate " + refreshRate
+		    + " is negative.");
+	}
+	this.refreshRate = refreshRate;
+	refreshTimer.stop();
+	if (refreshRate > 0) {
+	    refreshTimer.start(Math.max(1, 1000 / refreshRate));
+	}
+    }
+
+    /**
+     * Get how often the values shown are refreshed.
+     * 
+     * @return The number of refreshes per second, or 0 if stopped.
+     */
+    public int getRefreshRate() {
+	return refreshRate;
+    }
+
+    /**
+     * Get the Universe presented.
+     * 
+     * @return The Universe.
+     */
+    public Universe getUniverse() {
+	return universe;
+    }
+
+    /**
+     * Sample the values of the Universe, sending dataChanged for each run of
+     * rows whose value has changed since last shown. Called by the refresh
+     * timer.
+     */
+    public void refresh() {
+	final int version = universe.getVersion();
+	if (version == shownVersion) {
+	    return;
+	}
+	try {
+	    shownVersion = universe.copyRange(1, latestValues, 0,
+		    DMXFrame.MAX_SLOTS);
+	} catch (InvalidChannelNumberException ICNE) {
+	    // Should not occur
+	    ICNE.printStackTrace(System.err);
+	    return;
+	}
+	int row = 0;
+	while (row < DMXFrame.MAX_SLOTS) {
+	    if (latestValues[row] == shownValues[row]) {
+		row++;
+		continue;
+	    }
+	    final int first = row;
+	    while ((row < DMXFrame.MAX_SLOTS)
+		    && (latestValues[row] != shownValues[row])) {
+		shownValues[row] = latestValues[row];
+		row++;
+	    }
+	    dataChanged.emit(index(first, VALUE_COLUMN), index(row - 1,
+		    VALUE_COLUMN));
+	}
+    }
+
+    /**
+     * Show a change to the associations of a range of channels.
+     * 
+     * @param channelNumber
+     *                The first channel of the range.
+     * @param count
+     *                The number of channels in the range.
+     * @param association
+     *                The new association.
+     */
+    public void associationChanged(final Integer channelNumber,
+	    final Integer count, final String association) {
+	associationsRemoved(channelNumber, count);
+    }
+
+    /**
+     * Show the removal of the associations of a range of channels.
+     * 
+     * @param channelNumber
+     *                The first channel of the range.
+     * @param count
+     *                The number of channels in the range.
+     */
+    public void associationsRemoved(final Integer channelNumber,
+	    final Integer count) {
+	final int first = channelNumber.intValue() - 1;
+	dataChanged.emit(index(first, ASSOCIATION_COLUMN), index(first
+		+ count.intValue() - 1, ASSOCIATION_COLUMN));
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.trolltech.qt.core.QAbstractItemModel#rowCount(com.trolltech.qt.core.QModelIndex)
+     */
+    public int rowCount(final QModelIndex parent) {
+	return DMXFrame.MAX_SLOTS;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.trolltech.qt.core.QAbstractItemModel#columnCount(com.trolltech.qt.core.QModelIndex)
+     */
+    public int columnCount(final QModelIndex parent) {
+	return COLUMNS;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.trolltech.qt.core.QAbstractItemModel#data(com.trolltech.qt.core.QModelIndex,
+     *      int)
+     */
+    public Object data(final QModelIndex index, final int role) {
+	if ((index == null)
+		|| ((role != Qt.ItemDataRole.DisplayRole) && (role != Qt.ItemDataRole.EditRole))) {
+	    return null;
+	}
+	final int row = index.row();
+	switch (index.column()) {
+	case CHANNEL_COLUMN:
+	    return NUMBERS[row + 1];
+	case VALUE_COLUMN:
+	    return NUMBERS[shownValues[row] & 0xFF];
+	case ASSOCIATION_COLUMN:
+	    try {
+		return universe.getAssociation(row + 1);
+	    } catch (InvalidChannelNumberException ICNE) {
+		return null;
+	    }
+	default:
+	    return null;
+	}
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.trolltech.qt.core.QAbstractItemModel#headerData(int,
+     *      com.trolltech.qt.core.Qt.Orientation, int)
+     */
+    public Object headerData(final int section,
+	    final Qt.Orientation orientation, final int role) {
+	if ((orientation == Qt.Orientation.Horizontal)
+		&& (role == Qt.ItemDataRole.DisplayRole) && (section >= 0)
+		&& (section < COLUMNS)) {
+	    return headers[section];
+	}
+	return super.headerData(section, orientation, role);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.trolltech.qt.core.QAbstractItemModel#flags(com.trolltech.qt.core.QModelIndex)
+     */
+    public Qt.ItemFlags flags(final QModelIndex index) {
+	if ((index != null) && (index.column() == ASSOCIATION_COLUMN)) {
+	    return new Qt.ItemFlags(ItemFlag.ItemIsSelectable,
+		    ItemFlag.ItemIsEnabled, ItemFlag.ItemIsEditable);
+	}
+	return new Qt.ItemFlags(ItemFlag.ItemIsSelectable,
+		ItemFlag.ItemIsEnabled);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see com.trolltech.qt.core.QAbstractItemModel#setData(com.trolltech.qt.core.QModelIndex,
+     *      java.lang.Object, int)
+     */
+    public boolean setData(final QModelIndex index, final Object value,
+	    final int role) {
+	if ((index == null) || (index.column() != ASSOCIATION_COLUMN)
+		|| (role != Qt.ItemDataRole.EditRole)) {
+	    return false;
+	}
+	associationEdited.emit(Integer.valueOf(index.row() + 1),
+		(value == null) ? "" : value.toString());
+	return true;
+    }
+}
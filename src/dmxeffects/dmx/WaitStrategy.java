@@ -0,0 +1,65 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.dmx;
+
+/**
+ * Interface defining how the consumer of an InputQueue waits for frames to
+ * arrive, and how the producer wakes it. A single WaitStrategy may be shared
+ * by all of the queues drained by one consumer thread. Implementations trade
+ * CPU usage while idle against the latency between a frame being offered and
+ * it being taken.
+ * 
+ * @author chris
+ */
+public interface WaitStrategy {
+
+    /**
+     * Value used to select the BlockingWaitStrategy.
+     */
+    String BLOCKING = "blocking";
+
+    /**
+     * Value used to select the YieldingWaitStrategy.
+     */
+    String YIELDING = "yielding";
+
+    /**
+     * Value used to select the SpinParkWaitStrategy.
+     */
+    String SPIN = "spin";
+
+    /**
+     * Wait until the queue holds at least one frame. Called only from the
+     * consumer thread. Implementations may return early, so callers must
+     * check the queue again.
+     * 
+     * @param queue
+     *                The queue, or group of queues, being waited upon.
+     * @throws InterruptedException
+     *                 The waiting thread was interrupted.
+     */
+    void waitFor(Drainable queue) throws InterruptedException;
+
+    /**
+     * Inform any waiting consumer that a frame has been published. Called
+     * only from the producer thread, after every successful offer.
+     */
+    void signal();
+}
@@ -0,0 +1,60 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.dmx;
+
+/**
+ * WaitStrategy which spins briefly and then repeatedly yields the processor
+ * while waiting for a frame. Latency is low and other threads still get to
+ * run, but an idle listener keeps a core partly busy.
+ * 
+ * @author chris
+ */
+public class YieldingWaitStrategy implements WaitStrategy {
+
+    private static final int SPIN_TRIES = 100;
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see dmxeffects.dmx.WaitStrategy#waitFor(dmxeffects.dmx.Drainable)
+     */
+    public void waitFor(final Drainable queue) throws InterruptedException {
+	int counter = SPIN_TRIES;
+	while (queue.isEmpty()) {
+	    if (Thread.interrupted()) {
+		throw new InterruptedException();
+	    }
+	    if (counter > 0) {
+		counter--;
+	    } else {
+		Thread.yield();
+	    }
+	}
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see dmxeffects.dmx.WaitStrategy#signal()
+     */
+    public void signal() {
+	// Nothing to do, the consumer never sleeps.
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.effects;
+
+/**
+ * Effect lighting the channels of a range one after another, each at a set
+ * level for one step, and then starting again from the first.
+ * 
+ * @author chris
+ */
+public class Chase extends Effect {
+
+    private final transient long stepNanos;
+
+    private final transient int level;
+
+    /**
+     * Creates a new instance of Chase
+     * 
+     * @param firstChannel
+     *                The first channel covered, from 1 to 512.
+     * @param count
+     *                The number of channels covered.
+     * @param stepTime
+     *                The time each channel is lit for, in seconds.
+     * @param level
+     *                The level of the lit channel, from 0 to 255.
+     */
+    public Chase(final int firstChannel, final int count,
+	    final double stepTime, final int level) {
+	super(firstChannel, count);
+	stepNanos = toNanos(stepTime);
+	this.level = checkLevel(level);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see dmxeffects.effects.Effect#render(long, byte[])
+     */
+    public void render(final long time, final byte[] levels) {
+	final int step = (int) ((time / stepNanos) % getCount());
+	mix(levels, getFirstChannel() - 1 + step, level);
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.effects;
+
+import dmxeffects.dmx.DMXFrame;
+import dmxeffects.dmx.Universe;
+
+/**
+ * Engine fading whole Universes from their current levels to new ones, with a
+ * fade time and delay for each channel. Every channel of every Universe fed
+ * is held in flat float arrays, and each tick interpolates all of them in
+ * tight loops with no branches, calls or allocation, which the JIT is able to
+ * compile to vector instructions. Levels are then rounded into each frame by a
+ * second loop, as converting floats to integers in the first would stop it
+ * being vectorised.
+ * 
+ * For each channel, the fade begins at its start time plus its delay, and the
+ * progress through it at time t is
+ * 
+ * <pre>
+ * p = min(max((t - begin) / time, 0), 1)
+ * level = from + (to - from) * p
+ * </pre>
+ * 
+ * so only the begin time, reciprocal of the fade time, starting level and
+ * change in level are stored. Starting a new fade takes the level each
+ * channel has reached as its new starting level, so fades may be interrupted
+ * at any point without a jump.
+ * 
+ * Times are kept as nanoseconds on the engine's clock, except within a fade.
+ * Each Universe has an epoch, the time its last fade started, and begin
+ * times are stored in seconds from that epoch. Each tick works out the time
+ * since each epoch before interpolating, so the float times stay small and
+ * precise however long the engine has been running.
+ * 
+ * @author chris
+ */
+public class CrossfadeEngine extends TickEngine {
+
+    /**
+     * Name of the MergeSource added to each Universe fed.
+     */
+    public static final String SOURCE_NAME = "Crossfade Engine";
+
+    // Shortest fade, so that a snap still has a finite rate
+    private static final float MIN_FADE_TIME = 0.000001f;
+
+    /*
+     * Added to a level from 0 to 255 so that its float representation holds
+     * the level, rounded, in the lowest bits of the mantissa.
+     */
+    private static final float ROUNDING_BIAS = 12582912f;
+
+    // -- Fade of each channel, Universe by Universe, guarded by fadeLock -- //
+    private final transient float[] from;
+
+    private final transient float[] delta;
+
+    private final transient float[] begin;
+
+    private final transient float[] rate;
+
+    private final transient float[] levels;
+
+    // Time at which the last fade started on each Universe, its epoch
+    private final transient long[] epochs;
+
+    // Seconds since each Universe's epoch, for the tick being rendered
+    private final transient float[] elapsed;
+
+    // Time at which the last fade started on each Universe will finish
+    private final transient long[] completionTimes;
+
+    private final transient Object fadeLock = new Object();
+
+    /**
+     * Creates a new instance of CrossfadeEngine, ticking at the default rate.
+     * 
+     * @param universes
+     *                The Universes to fade.
+     */
+    public CrossfadeEngine(final Universe[] universes) {
+	this(universes, DEFAULT_RATE);
+    }
+
+    /**
+     * Creates a new instance of CrossfadeEngine
+     * 
+     * @param universes
+     *                The Universes to fade.
+     * @param ticksPerSecond
+     *                The number of times per second levels are computed and
+     *                sent to each Universe.
+     */
+    public CrossfadeEngine(final Universe[] universes,
+	    final double ticksPerSecond) {
+	super(SOURCE_NAME, universes, ticksPerSecond);
+	final int size = universes.length * DMXFrame.MAX_SLOTS;
+	from = new float[size];
+	delta = new float[size];
+	begin = new float[size];
+	rate = new float[size];
+	levels = new float[size];
+	epochs = new long[universes.length];
+	elapsed = new float[universes.length];
+	completionTimes = new long[universes.length];
+	for (int i = 0; i < size; i++) {
+	    rate[i] = 1 / MIN_FADE_TIME;
+	}
+    }
+
+    /**
+     * Fade every channel of a Universe to new levels, all with the same fade
+     * time and delay.
+     * 
+     * @param universe
+     *                The Universe to fade.
+     * @param target
+     *                The levels to fade to, unsigned, with channel 1 at
+     *                index 0.
+     * @param fadeTime
+     *                The time each channel takes to fade, in seconds.
+     * @param delay
+     *                The time before each channel starts to fade, in
+     *                seconds.
+     */
+    public void fadeTo(final Universe universe, final byte[] target,
+	    final double fadeTime, final double delay) {
+	fadeTo(universe, target, null, (float) fadeTime, null, (float) delay);
+    }
+
+    /**
+     * Fade every channel of a Universe to new levels, each with its own fade
+     * time and delay.
+     * 
+     * @param universe
+     *                The Universe to fade.
+     * @param target
+     *                The levels to fade to, unsigned, with channel 1 at
+     *                index 0.
+     * @param fadeTimes
+     *                The time each channel takes to fade, in seconds, with
+     *                channel 1 at index 0.
+     * @param delays
+     *                The time before each channel starts to fade, in
+     *                seconds, with channel 1 at index 0.
+     */
+    public void fadeTo(final Universe universe, final byte[] target,
+	    final float[] fadeTimes, final float[] delays) {
+	fadeTo(universe, target, fadeTimes, 0, delays, 0);
+    }
+
+    /**
+     * Start a fade, taking each time from its array where one is given.
+     */
+    private void fadeTo(final Universe universe, final byte[] target,
+	    final float[] fadeTimes, final float fadeTime,
+	    final float[] delays, final float delay) {
+	final int u = indexOf(universe);
+	checkLength(target.length);
+	if (fadeTimes != null) {
+	    checkLength(fadeTimes.length);
+	}
+	if (delays != null) {
+	    checkLength(delays.length);
+	}
+	synchronized (fadeLock) {
+	    final long now = getTime();
+	    // Levels reached so far, then begin times from the new epoch
+	    final float t = toSeconds(now - epochs[u]);
+	    epochs[u] = now;
+	    final int base = u * DMXFrame.MAX_SLOTS;
+	    float longest = 0;
+	    for (int c = 0; c < DMXFrame.MAX_SLOTS; c++) {
+		final int i = base + c;
+		final float time = Math.max(MIN_FADE_TIME,
+			(fadeTimes == null) ? fadeTime : fadeTimes[c]);
+		final float wait = Math.max(0, (delays == null) ? delay
+			: delays[c]);
+		final float current = from[i] + delta[i]
+			* Math.min(Math.max((t - begin[i]) * rate[i], 0), 1);
+		if ((time == MIN_FADE_TIME) && (wait == 0)) {
+		    // Snap now, whatever the precision of the clock
+		    from[i] = target[c] & 0xFF;
+		    delta[i] = 0;
+		} else {
+		    from[i] = current;
+		    delta[i] = (target[c] & 0xFF) - current;
+		}
+		begin[i] = wait;
+		rate[i] = 1 / time;
+		longest = Math.max(longest, wait + time);
+	    }
+	    completionTimes[u] = now
+		    + (long) ((double) longest * NANOS_PER_SECOND);
+	}
+    }
+
+    /**
+     * Get the time at which the last fade started on a Universe will finish.
+     * 
+     * @param universe
+     *                The Universe.
+     * @return Nanoseconds since the engine started.
+     */
+    public long getCompletionTime(final Universe universe) {
+	final int u = indexOf(universe);
+	synchronized (fadeLock) {
+	    return completionTimes[u];
+	}
+    }
+
+    /**
+     * Check whether the last fade started on a Universe has finished.
+     * 
+     * @param universe
+     *                The Universe.
+     * @return True if every channel has reached its target.
+     */
+    public boolean isComplete(final Universe universe) {
+	return getTime() >= getCompletionTime(universe);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see dmxeffects.effects.TickEngine#render(long, dmxeffects.dmx.DMXFrame[])
+     */
+    protected void render(final long time, final DMXFrame[] output) {
+	synchronized (fadeLock) {
+	    for (int u = 0; u < elapsed.length; u++) {
+		elapsed[u] = toSeconds(time - epochs[u]);
+	    }
+	    interpolate();
+	}
+	for (int u = 0; u < output.length; u++) {
+	    final byte[] data = output[u].getData();
+	    final int base = u * DMXFrame.MAX_SLOTS;
+	    for (int c = 0; c < DMXFrame.MAX_SLOTS; c++) {
+		data[c] = (byte) Float.floatToRawIntBits(levels[base + c]
+			+ ROUNDING_BIAS);
+	    }
+	}
+    }
+
+    /**
+     * Compute the level of every channel from the elapsed time of its
+     * Universe. The inner loop is kept free of branches and calls other than
+     * intrinsics so that it may be vectorised.
+     */
+    private void interpolate() {
+	for (int u = 0; u < elapsed.length; u++) {
+	    final float t = elapsed[u];
+	    final int base = u * DMXFrame.MAX_SLOTS;
+	    final int end = base + DMXFrame.MAX_SLOTS;
+	    for (int i = base; i < end; i++) {
+		final float p = Math.min(Math.max((t - begin[i]) * rate[i],
+			0f), 1f);
+		levels[i] = from[i] + delta[i] * p;
+	    }
+	}
+    }
+
+    private static float toSeconds(final long nanos) {
+	return (float) ((double) nanos / NANOS_PER_SECOND);
+    }
+
+    private static void checkLength(final int length) {
+	if (length < DMXFrame.MAX_SLOTS) {
+	    throw new IllegalArgumentException("Expected "
+		    + DMXFrame.MAX_SLOTS + " values but got " + length + ".");
+	}
+    }
+}
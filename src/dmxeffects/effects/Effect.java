@@ -0,0 +1,146 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.effects;
+
+/**
+ * Base class of the effects computed by an EffectsEngine. Each effect covers a
+ * range of channels of one Universe, and each tick renders its levels for the
+ * time since it was added to the engine. Effects are layered by taking the
+ * highest level of any effect on each channel.
+ * 
+ * Rendering is called on the engine thread once per tick, so must be quick
+ * and should not allocate; anything an effect needs should be prepared when
+ * it is created.
+ * 
+ * @author chris
+ */
+public abstract class Effect {
+
+    /**
+     * Number of nanoseconds in a second, for effects timed in seconds.
+     */
+    public static final long NANOS_PER_SECOND = 1000000000L;
+
+    private final transient int firstChannel;
+
+    private final transient int count;
+
+    // Set by the engine when the effect is added
+    transient int universeIndex = -1;
+
+    transient long startTime = 0;
+
+    /**
+     * Creates a new instance of Effect
+     * 
+     * @param firstChannel
+     *                The first channel covered, from 1 to 512.
+     * @param count
+     *                The number of channels covered.
+     */
+    protected Effect(final int firstChannel, final int count) {
+	super();
+	if ((firstChannel < 1) || (count < 1) || (firstChannel + count - 1 > 512)) {
+	    throw new IllegalArgumentException("Channels " + firstChannel
+		    + " to " + (firstChannel + count - 1)
+		    + " are not within 1 to 512.");
+	}
+	this.firstChannel = firstChannel;
+	this.count = count;
+    }
+
+    /**
+     * Get the first channel covered.
+     * 
+     * @return The first channel number.
+     */
+    public int getFirstChannel() {
+	return firstChannel;
+    }
+
+    /**
+     * Get the number of channels covered.
+     * 
+     * @return The number of channels.
+     */
+    public int getCount() {
+	return count;
+    }
+
+    /**
+     * Render the levels of this effect, layering them onto those already
+     * rendered for its Universe.
+     * 
+     * @param time
+     *                Nanoseconds since the effect was added to the engine.
+     * @param levels
+     *                The levels of the Universe's 512 channels, unsigned,
+     *                with channel 1 at index 0.
+     */
+    public abstract void render(long time, byte[] levels);
+
+    /**
+     * Layer a level onto a channel, keeping the higher of it and the level
+     * already there.
+     * 
+     * @param levels
+     *                The levels of the Universe.
+     * @param index
+     *                The index of the channel, 0 for channel 1.
+     * @param level
+     *                The level, from 0 to 255.
+     */
+    protected static void mix(final byte[] levels, final int index,
+	    final int level) {
+	if (level > (levels[index] & 0xFF)) {
+	    levels[index] = (byte) level;
+	}
+    }
+
+    /**
+     * Convert a time in seconds to nanoseconds, checking it is positive.
+     * 
+     * @param seconds
+     *                The time in seconds.
+     * @return The time in nanoseconds, at least 1.
+     */
+    protected static long toNanos(final double seconds) {
+	if (seconds <= 0) {
+	    throw new IllegalArgumentException("Time " + seconds
+		    + " must be greater than zero.");
+	}
+	return Math.max(1L, (long) (seconds * NANOS_PER_SECOND));
+    }
+
+    /**
+     * Check a level is within 0 to 255.
+     * 
+     * @param level
+     *                The level to check.
+     * @return The level.
+     */
+    protected static int checkLevel(final int level) {
+	if ((level < 0) || (level > 255)) {
+	    throw new IllegalArgumentException("Level " + level
+		    + " is not within 0 to 255.");
+	}
+	return level;
+    }
+}
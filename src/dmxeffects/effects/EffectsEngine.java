@@ -0,0 +1,176 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.effects;
+
+import java.util.Arrays;
+
+import dmxeffects.dmx.DMXFrame;
+import dmxeffects.dmx.Universe;
+
+/**
+ * Engine computing the levels of running Effects at a fixed tick rate, and
+ * sending them to the Universes they are layered onto. Effects are held in an
+ * array replaced whenever one is added or removed, so a tick takes no locks
+ * and creates no objects. An effect which throws an exception is stopped and
+ * counted, so that it cannot stop the others.
+ * 
+ * @author chris
+ */
+public class EffectsEngine extends TickEngine {
+
+    /**
+     * Name of the MergeSource added to each Universe fed.
+     */
+    public static final String SOURCE_NAME = "Effects Engine";
+
+    /*
+     * Replaced, never modified, when an effect is added or removed so the
+     * engine thread can read them without locks.
+     */
+    private transient volatile Effect[] effects = new Effect[0];
+
+    // Written only by the engine thread
+    private transient volatile long effectsFailed = 0;
+
+    /**
+     * Creates a new instance of EffectsEngine, ticking at the default rate.
+     * 
+     * @param universes
+     *                The Universes effects may be layered onto.
+     */
+    public EffectsEngine(final Universe[] universes) {
+	this(universes, DEFAULT_RATE);
+    }
+
+    /**
+     * Creates a new instance of EffectsEngine
+     * 
+     * @param universes
+     *                The Universes effects may be layered onto.
+     * @param ticksPerSecond
+     *                The number of times per second levels are computed and
+     *                sent to each Universe.
+     */
+    public EffectsEngine(final Universe[] universes,
+	    final double ticksPerSecond) {
+	super(SOURCE_NAME, universes, ticksPerSecond);
+    }
+
+    /**
+     * Start running an effect, layered onto a Universe. Its time starts from
+     * now.
+     * 
+     * @param universe
+     *                The Universe to layer the effect onto, which must be
+     *                one of those given to this engine.
+     * @param effect
+     *                The effect to run, which must not already be running.
+     */
+    public synchronized void addEffect(final Universe universe,
+	    final Effect effect) {
+	final int index = indexOf(universe);
+	if (effect.universeIndex != -1) {
+	    throw new IllegalArgumentException("The effect is already running.");
+	}
+	effect.universeIndex = index;
+	effect.startTime = getTime();
+	final Effect[] current = effects;
+	final Effect[] replacement = new Effect[current.length + 1];
+	System.arraycopy(current, 0, replacement, 0, current.length);
+	replacement[current.length] = effect;
+	effects = replacement;
+    }
+
+    /**
+     * Stop running an effect.
+     * 
+     * @param effect
+     *                The effect to stop.
+     */
+    public synchronized void removeEffect(final Effect effect) {
+	final Effect[] current = effects;
+	for (int i = 0; i < current.length; i++) {
+	    if (current[i] == effect) {
+		final Effect[] replacement = new Effect[current.length - 1];
+		System.arraycopy(current, 0, replacement, 0, i);
+		System.arraycopy(current, i + 1, replacement, i,
+			current.length - i - 1);
+		effects = replacement;
+		effect.universeIndex = -1;
+		return;
+	    }
+	}
+    }
+
+    /**
+     * Stop running every effect.
+     */
+    public synchronized void clearEffects() {
+	final Effect[] current = effects;
+	for (int i = 0; i < current.length; i++) {
+	    current[i].universeIndex = -1;
+	}
+	effects = new Effect[0];
+    }
+
+    /**
+     * Get the effects running.
+     * 
+     * @return The running effects, in the order they were added.
+     */
+    public Effect[] getEffects() {
+	return effects.clone();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see dmxeffects.effects.TickEngine#render(long, dmxeffects.dmx.DMXFrame[])
+     */
+    protected void render(final long time, final DMXFrame[] output) {
+	for (int u = 0; u < output.length; u++) {
+	    Arrays.fill(output[u].getData(), (byte) 0);
+	}
+	final Effect[] current = effects;
+	for (int e = 0; e < current.length; e++) {
+	    final Effect effect = current[e];
+	    final int index = effect.universeIndex;
+	    if (index != -1) {
+		try {
+		    effect.render(time - effect.startTime, output[index]
+			    .getData());
+		} catch (RuntimeException RE) {
+		    effectsFailed++;
+		    System.err.println("Effect stopped: " + RE);
+		    removeEffect(effect);
+		}
+	    }
+	}
+    }
+
+    /**
+     * Get the number of effects stopped because they threw an exception.
+     * 
+     * @return The number of effects failed.
+     */
+    public long getEffectsFailed() {
+	return effectsFailed;
+    }
+}
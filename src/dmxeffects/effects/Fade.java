@@ -0,0 +1,87 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.effects;
+
+/**
+ * Effect fading every channel of a range from one level to another over a set
+ * time, then holding the final level.
+ * 
+ * @author chris
+ */
+public class Fade extends Effect {
+
+    private final transient long durationNanos;
+
+    private final transient int from;
+
+    private final transient int to;
+
+    /**
+     * Creates a new instance of Fade
+     * 
+     * @param firstChannel
+     *                The first channel covered, from 1 to 512.
+     * @param count
+     *                The number of channels covered.
+     * @param from
+     *                The starting level, from 0 to 255.
+     * @param to
+     *                The final level, from 0 to 255.
+     * @param duration
+     *                The time taken to fade, in seconds.
+     */
+    public Fade(final int firstChannel, final int count, final int from,
+	    final int to, final double duration) {
+	super(firstChannel, count);
+	this.from = checkLevel(from);
+	this.to = checkLevel(to);
+	durationNanos = toNanos(duration);
+    }
+
+    /**
+     * Check whether the fade has reached its final level.
+     * 
+     * @param time
+     *                Nanoseconds since the fade was added to the engine.
+     * @return True if the fade is complete.
+     */
+    public boolean isComplete(final long time) {
+	return time >= durationNanos;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see dmxeffects.effects.Effect#render(long, byte[])
+     */
+    public void render(final long time, final byte[] levels) {
+	int level;
+	if (time >= durationNanos) {
+	    level = to;
+	} else {
+	    level = from + (int) (((to - from) * time) / durationNanos);
+	}
+	final int first = getFirstChannel() - 1;
+	final int last = first + getCount();
+	for (int i = first; i < last; i++) {
+	    mix(levels, i, level);
+	}
+    }
+}
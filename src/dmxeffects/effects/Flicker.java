@@ -0,0 +1,91 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.effects;
+
+import dmxeffects.dmx.FastRandom;
+
+/**
+ * Effect setting each channel of a range to a random level between a low and
+ * a high level, choosing new levels at a set interval, like a flame or a
+ * failing lamp.
+ * 
+ * @author chris
+ */
+public class Flicker extends Effect {
+
+    private final transient long intervalNanos;
+
+    private final transient int low;
+
+    private final transient int range;
+
+    private final transient FastRandom random = new FastRandom();
+
+    private final transient byte[] current;
+
+    private transient long lastInterval = -1;
+
+    /**
+     * Creates a new instance of Flicker
+     * 
+     * @param firstChannel
+     *                The first channel covered, from 1 to 512.
+     * @param count
+     *                The number of channels covered.
+     * @param interval
+     *                The time between changes of level, in seconds.
+     * @param low
+     *                The lowest level, from 0 to 255.
+     * @param high
+     *                The highest level, from 0 to 255.
+     */
+    public Flicker(final int firstChannel, final int count,
+	    final double interval, final int low, final int high) {
+	super(firstChannel, count);
+	intervalNanos = toNanos(interval);
+	this.low = checkLevel(low);
+	range = checkLevel(high) - low + 1;
+	if (range < 1) {
+	    throw new IllegalArgumentException("Level " + high
+		    + " is below level " + low + ".");
+	}
+	current = new byte[count];
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see dmxeffects.effects.Effect#render(long, byte[])
+     */
+    public void render(final long time, final byte[] levels) {
+	final long interval = time / intervalNanos;
+	final int count = getCount();
+	if (interval != lastInterval) {
+	    lastInterval = interval;
+	    for (int i = 0; i < count; i++) {
+		current[i] = (byte) (low + (random.nextValue() * range >> 8));
+	    }
+	}
+	final int first = getFirstChannel() - 1;
+	for (int i = 0; i < count; i++) {
+	    mix(levels, first + i, current[i] & 0xFF);
+	}
+    }
+}
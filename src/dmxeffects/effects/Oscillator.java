@@ -0,0 +1,141 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.effects;
+
+/**
+ * Effect moving the level of each channel between a low and a high level in
+ * a repeating wave. Neighbouring channels may be offset in phase so that the
+ * wave travels along the range.
+ * 
+ * @author chris
+ */
+public class Oscillator extends Effect {
+
+    /**
+     * Value used to indicate a sine wave.
+     */
+    public static final int SINE_WAVE = 60001;
+
+    /**
+     * Value used to indicate a saw wave, rising steadily and then dropping.
+     */
+    public static final int SAW_WAVE = 60002;
+
+    /**
+     * Value used to indicate a square wave, high for the first half of each
+     * period and low for the second.
+     */
+    public static final int SQUARE_WAVE = 60003;
+
+    // Steps in one period of the wave tables
+    private static final int TABLE_SIZE = 1024;
+
+    // Sine wave from 0 to 65535, so that no trigonometry is done per tick
+    private static final int[] SINE_TABLE = new int[TABLE_SIZE];
+
+    static {
+	for (int i = 0; i < TABLE_SIZE; i++) {
+	    SINE_TABLE[i] = (int) Math.round((Math.sin(2 * Math.PI * i
+		    / TABLE_SIZE) + 1) * 32767.5);
+	}
+    }
+
+    private final transient int waveform;
+
+    private final transient long periodNanos;
+
+    private final transient long offsetNanos;
+
+    private final transient int low;
+
+    private final transient int range;
+
+    /**
+     * Creates a new instance of Oscillator
+     * 
+     * @param firstChannel
+     *                The first channel covered, from 1 to 512.
+     * @param count
+     *                The number of channels covered.
+     * @param waveform
+     *                One of SINE_WAVE, SAW_WAVE or SQUARE_WAVE.
+     * @param period
+     *                The length of one wave, in seconds.
+     * @param spread
+     *                The fraction of a period by which each channel lags
+     *                the one before it, negative to lead it instead.
+     * @param low
+     *                The lowest level, from 0 to 255.
+     * @param high
+     *                The highest level, from 0 to 255.
+     */
+    public Oscillator(final int firstChannel, final int count,
+	    final int waveform, final double period, final double spread,
+	    final int low, final int high) {
+	super(firstChannel, count);
+	switch (waveform) {
+	case SINE_WAVE:
+	case SAW_WAVE:
+	case SQUARE_WAVE:
+	    break;
+	default:
+	    throw new IllegalArgumentException("Waveform " + waveform
+		    + " is not valid.");
+	}
+	this.waveform = waveform;
+	periodNanos = toNanos(period);
+	// Keep the offset within one period, whichever way the wave runs
+	final long offset = (long) (spread * periodNanos) % periodNanos;
+	offsetNanos = (offset < 0) ? offset + periodNanos : offset;
+	this.low = checkLevel(low);
+	range = checkLevel(high) - low;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see dmxeffects.effects.Effect#render(long, byte[])
+     */
+    public void render(final long time, final byte[] levels) {
+	final int first = getFirstChannel() - 1;
+	final int count = getCount();
+	// Work back from the phase of the first channel, modulo the period
+	long phase = time % periodNanos;
+	for (int i = 0; i < count; i++) {
+	    final int step = (int) ((phase * TABLE_SIZE) / periodNanos);
+	    int wave;
+	    switch (waveform) {
+	    case SINE_WAVE:
+		wave = SINE_TABLE[step];
+		break;
+	    case SAW_WAVE:
+		wave = (step * 65535) / (TABLE_SIZE - 1);
+		break;
+	    default:
+		wave = (step < TABLE_SIZE / 2) ? 65535 : 0;
+	    }
+	    mix(levels, first + i, low + (int) (((long) wave * range) / 65535));
+	    phase -= offsetNanos;
+	    if (phase < 0) {
+		phase += periodNanos;
+	    }
+	}
+    }
+}
@@ -0,0 +1,442 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.effects;
+
+import java.util.concurrent.locks.LockSupport;
+
+import dmxeffects.dmx.DMXFrame;
+import dmxeffects.dmx.MergeEngine;
+import dmxeffects.dmx.MergeSource;
+import dmxeffects.dmx.Universe;
+
+/**
+ * Base class of engines computing a frame for each of a set of Universes at a
+ * fixed tick rate. Each Universe fed gets a MergeSource of its own while the
+ * engine runs, so its output merges with any other input as set by its
+ * MergeEngine.
+ * 
+ * Ticks run on their own thread on a drift-free schedule; if the engine falls
+ * behind by more than a tick it skips ahead rather than computing a burst,
+ * counting the ticks it missed. One frame per Universe is allocated up front
+ * and reused, and the time each tick takes is recorded so that the cost of
+ * the engine can be watched.
+ * 
+ * A tick may also be requested at once, so that a change such as the start
+ * of a fade is output without waiting up to a whole period for the next tick
+ * on the schedule. The requested tick is extra, leaving the schedule as it
+ * was, and the time from the request to its frames being sent is recorded.
+ * 
+ * @author chris
+ */
+public abstract class TickEngine implements Runnable {
+
+    /**
+     * Tick rate used when none is specified, in ticks per second.
+     */
+    public static final double DEFAULT_RATE = 44;
+
+    /**
+     * Number of nanoseconds in a second.
+     */
+    public static final long NANOS_PER_SECOND = 1000000000L;
+
+    // Remaining time below which the thread spins rather than parks
+    private static final long SPIN_THRESHOLD = 50000L;
+
+    private final transient String name;
+
+    private final transient Universe[] universes;
+
+    private final transient MergeEngine[] engines;
+
+    private final transient MergeSource[] sources;
+
+    private final transient DMXFrame[] frames;
+
+    private final transient double tickRate;
+
+    private final transient long periodNanos;
+
+    private transient volatile boolean running = false;
+
+    private transient volatile long startTime = 0;
+
+    private transient volatile Thread engineThread = null;
+
+    // -- Tick requested out of schedule, and when it was asked for -- //
+    private transient volatile boolean tickRequested = false;
+
+    private transient volatile long requestTime = 0;
+
+    // -- Statistics, written only by the engine thread -- //
+    private transient volatile long ticks = 0;
+
+    private transient volatile long ticksMissed = 0;
+
+    private transient volatile long framesDropped = 0;
+
+    private transient volatile long lastTickNanos = 0;
+
+    private transient volatile long maxTickNanos = 0;
+
+    private transient volatile long totalTickNanos = 0;
+
+    private transient volatile long lastResponseNanos = 0;
+
+    private transient volatile long maxResponseNanos = 0;
+
+    /**
+     * Creates a new instance of TickEngine
+     * 
+     * @param name
+     *                The name of the engine, used for its MergeSources and
+     *                its thread.
+     * @param universes
+     *                The Universes to feed.
+     * @param ticksPerSecond
+     *                The number of times per second frames are computed and
+     *                sent to each Universe.
+     */
+    protected TickEngine(final String name, final Universe[] universes,
+	    final double ticksPerSecond) {
+	super();
+	if (ticksPerSecond <= 0) {
+	    throw new IllegalArgumentException("Tick rate " + ticksPerSecond
+		    + " must be greater than zero.");
+	}
+	this.name = name;
+	tickRate = ticksPerSecond;
+	periodNanos = (long) (NANOS_PER_SECOND / ticksPerSecond);
+	this.universes = universes.clone();
+	engines = new MergeEngine[universes.length];
+	sources = new MergeSource[universes.length];
+	frames = new DMXFrame[universes.length];
+	for (int i = 0; i < universes.length; i++) {
+	    engines[i] = universes[i].getMergeEngine();
+	    frames[i] = new DMXFrame();
+	    frames[i].setStartCode(DMXFrame.NULL_START_CODE);
+	    frames[i].setLength(DMXFrame.MAX_SLOTS);
+	}
+    }
+
+    /**
+     * Add this engine's sources to the Universes it feeds, and start
+     * computing frames on a new daemon thread.
+     * 
+     * @throws IllegalStateException
+     *                 The engine is already running.
+     */
+    public synchronized void start() {
+	if (engineThread != null) {
+	    throw new IllegalStateException("Engine " + name
+		    + " is already running.");
+	}
+	for (int i = 0; i < sources.length; i++) {
+	    sources[i] = engines[i].addSource(name,
+		    MergeSource.DEFAULT_PRIORITY);
+	}
+	startTime = System.nanoTime();
+	running = true;
+	final Thread thread = new Thread(this, name);
+	thread.setDaemon(true);
+	thread.setPriority(Thread.MAX_PRIORITY);
+	engineThread = thread;
+	thread.start();
+    }
+
+    /**
+     * Stop computing frames, and remove this engine's sources from the
+     * Universes it fed. Unless called by the engine thread itself, this waits
+     * for the thread to end, so the engine may be started again at once.
+     */
+    public void stop() {
+	running = false;
+	final Thread thread = engineThread;
+	if (thread != null) {
+	    LockSupport.unpark(thread);
+	    if (thread != Thread.currentThread()) {
+		try {
+		    thread.join();
+		} catch (InterruptedException IE) {
+		    Thread.currentThread().interrupt();
+		}
+	    }
+	}
+    }
+
+    /**
+     * Compute and send a tick as soon as possible, rather than waiting for
+     * the next on the schedule. Requests made before the engine thread gets
+     * to them are served by the one tick. Nothing is sent if the engine is
+     * not started.
+     * 
+     * @param since
+     *                The System.nanoTime() of the event the tick responds
+     *                to, from which the response time is measured.
+     */
+    public void requestTick(final long since) {
+	requestTime = since;
+	tickRequested = true;
+	final Thread thread = engineThread;
+	if (thread != null) {
+	    LockSupport.unpark(thread);
+	}
+    }
+
+    /**
+     * Method invoked when the engine thread is started. However the thread
+     * ends, whether stopped or by an exception, the engine is left stopped
+     * with its sources removed.
+     */
+    public void run() {
+	final long start = startTime;
+	long tick = 0;
+	try {
+	    while (running) {
+		final long deadline = start + (tick * periodNanos);
+		long remaining = deadline - System.nanoTime();
+		while ((remaining > 0) && !tickRequested && running) {
+		    if (remaining > SPIN_THRESHOLD) {
+			LockSupport.parkNanos(this, remaining - SPIN_THRESHOLD);
+		    }
+		    remaining = deadline - System.nanoTime();
+		}
+		if (!running) {
+		    break;
+		}
+		if (remaining > 0) {
+		    // Woken by a request, so tick now and keep the schedule
+		    tickRequested = false;
+		    final long since = requestTime;
+		    final long tickStart = System.nanoTime();
+		    computeTick(tickStart - start);
+		    final long tickEnd = System.nanoTime();
+		    recordTick(tickEnd - tickStart);
+		    recordResponse(tickEnd - since);
+		    continue;
+		}
+		// A scheduled tick also answers any request made before it
+		final boolean requested = tickRequested;
+		tickRequested = false;
+		final long since = requestTime;
+		final long tickStart = System.nanoTime();
+		computeTick(tick * periodNanos);
+		final long tickEnd = System.nanoTime();
+		recordTick(tickEnd - tickStart);
+		if (requested) {
+		    recordResponse(tickEnd - since);
+		}
+
+		// Skip any ticks which have already passed
+		final long behind = (tickEnd - start) / periodNanos;
+		if (behind > tick + 1) {
+		    ticksMissed += behind - tick - 1;
+		    tick = behind;
+		} else {
+		    tick++;
+		}
+	    }
+	} finally {
+	    // Whether stopped or failed, release the Universes fed
+	    running = false;
+	    for (int i = 0; i < sources.length; i++) {
+		engines[i].removeSource(sources[i]);
+		sources[i] = null;
+	    }
+	    engineThread = null;
+	}
+    }
+
+    /**
+     * Compute the frames for a moment, and send them to the Universes. This
+     * is called by the engine thread for each tick, and may be called
+     * directly to measure the cost of a tick when the engine is not started,
+     * in which case the frames are computed but, having no sources, not sent.
+     * 
+     * @param time
+     *                Nanoseconds since the engine started.
+     */
+    public void computeTick(final long time) {
+	render(time, frames);
+	final int sequence = (int) (time / periodNanos) + 1;
+	for (int u = 0; u < frames.length; u++) {
+	    frames[u].setSequence(sequence);
+	    final MergeSource source = sources[u];
+	    if ((source != null) && !source.getInputQueue().offer(frames[u])) {
+		framesDropped++;
+	    }
+	}
+    }
+
+    /**
+     * Compute the levels of every Universe for a moment.
+     * 
+     * @param time
+     *                Nanoseconds since the engine started.
+     * @param output
+     *                The frames to fill, one for each Universe in the order
+     *                given to the engine.
+     */
+    protected abstract void render(long time, DMXFrame[] output);
+
+    private void recordTick(final long tickNanos) {
+	lastTickNanos = tickNanos;
+	if (tickNanos > maxTickNanos) {
+	    maxTickNanos = tickNanos;
+	}
+	totalTickNanos += tickNanos;
+	ticks++;
+    }
+
+    private void recordResponse(final long responseNanos) {
+	lastResponseNanos = responseNanos;
+	if (responseNanos > maxResponseNanos) {
+	    maxResponseNanos = responseNanos;
+	}
+    }
+
+    /**
+     * Find the position of a Universe among those fed.
+     * 
+     * @param universe
+     *                The Universe.
+     * @return The index of the Universe.
+     */
+    protected int indexOf(final Universe universe) {
+	for (int i = 0; i < universes.length; i++) {
+	    if (universes[i] == universe) {
+		return i;
+	    }
+	}
+	throw new IllegalArgumentException("Universe "
+		+ universe.getUniverseNumber() + " is not fed by this engine.");
+    }
+
+    /**
+     * Get the number of Universes fed.
+     * 
+     * @return The number of Universes.
+     */
+    public int getUniverseCount() {
+	return universes.length;
+    }
+
+    /**
+     * Get the time on the engine's clock.
+     * 
+     * @return Nanoseconds since the engine started, or 0 if not started.
+     */
+    public long getTime() {
+	return running ? System.nanoTime() - startTime : 0;
+    }
+
+    /**
+     * Get the number of ticks computed per second.
+     * 
+     * @return The tick rate.
+     */
+    public double getTickRate() {
+	return tickRate;
+    }
+
+    /**
+     * Get the number of ticks computed since the engine started.
+     * 
+     * @return The number of ticks.
+     */
+    public long getTicks() {
+	return ticks;
+    }
+
+    /**
+     * Get the number of ticks skipped because the engine fell behind.
+     * 
+     * @return The number of ticks missed.
+     */
+    public long getTicksMissed() {
+	return ticksMissed;
+    }
+
+    /**
+     * Get the number of frames lost because a Universe's InputQueue was
+     * full.
+     * 
+     * @return The number of frames dropped.
+     */
+    public long getFramesDropped() {
+	return framesDropped;
+    }
+
+    /**
+     * Get the time taken to compute the last tick.
+     * 
+     * @return The time in nanoseconds.
+     */
+    public long getLastTickNanos() {
+	return lastTickNanos;
+    }
+
+    /**
+     * Get the longest time taken to compute a tick.
+     * 
+     * @return The time in nanoseconds.
+     */
+    public long getMaxTickNanos() {
+	return maxTickNanos;
+    }
+
+    /**
+     * Get the average time taken to compute a tick.
+     * 
+     * @return The time in nanoseconds.
+     */
+    public double getAverageTickNanos() {
+	final long count = ticks;
+	return (count == 0) ? 0 : (double) totalTickNanos / count;
+    }
+
+    /**
+     * Get the time from the last tick requested to its frames being sent.
+     * 
+     * @return The time in nanoseconds, or 0 if no tick has been requested.
+     */
+    public long getLastResponseNanos() {
+	return lastResponseNanos;
+    }
+
+    /**
+     * Get the longest time from a tick being requested to its frames being
+     * sent.
+     * 
+     * @return The time in nanoseconds, or 0 if no tick has been requested.
+     */
+    public long getMaxResponseNanos() {
+	return maxResponseNanos;
+    }
+
+    /**
+     * Get the fraction of each tick period spent computing, on average.
+     * 
+     * @return The load, where 1 means no time is left spare.
+     */
+    public double getLoad() {
+	return getAverageTickNanos() / periodNanos;
+    }
+}
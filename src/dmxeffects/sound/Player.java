@@ -19,64 +19,147 @@
  */
 package dmxeffects.sound;
 
-import com.trolltech.qt.core.QObject;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import dmxeffects.OperationFailedException;
 
 /**
+ * Plays SoundTracks on its own thread. Requests may be made from any thread,
+ * and are carried out in turn on the thread running the Player.
+ * 
  * @author chris
  * 
  */
-public class Player extends QObject implements Runnable {
+public class Player implements Runnable {
 
-    // -- Signals for playback information -- //
+    // Requests waiting to be carried out by the player thread
+    private final transient BlockingQueue<Runnable> requests = new LinkedBlockingQueue<Runnable>();
 
-    public transient Signal0 playingSignal = new Signal0();
+    // Track to be played, only used on the player thread
+    private transient SoundTrack cuedTrack = null;
 
-    public transient Signal0 stoppedSignal = new Signal0();
+    // Track currently playing, only used on the player thread
+    private transient SoundTrack playingTrack = null;
+
+    // -- Listeners for playback information -- //
+    private transient volatile PlayerListener[] listeners = new PlayerListener[0];
 
     /**
      * Create a new instance of this class
      */
     public Player() {
 	super();
-	// TODO Auto-generated method stub
     }
 
     /**
-     * Run when the containing Thread starts
+     * Run when the containing Thread starts, carrying out requests until
+     * interrupted.
      */
     public void run() {
-	// TODO Auto-generated method stub
+	while (true) {
+	    try {
+		requests.take().run();
+	    } catch (InterruptedException e) {
+		return;
+	    }
+	}
+    }
 
+    /**
+     * Register a listener to be informed of the playback state.
+     * 
+     * @param listener
+     *                The listener to add.
+     */
+    public synchronized void addPlayerListener(final PlayerListener listener) {
+	final PlayerListener[] current = listeners;
+	final PlayerListener[] replacement = new PlayerListener[current.length + 1];
+	System.arraycopy(current, 0, replacement, 0, current.length);
+	replacement[current.length] = listener;
+	listeners = replacement;
     }
 
     // -- Action handlers -- //
     /**
-     * Handle a track beinq cued
+     * Handle a track being cued, replacing any track already cued
      * 
      * @param track
      *                Track to cue.
      */
     public void cueTrack(final SoundTrack track) {
-	// TODO Auto-generated method stub
+	requests.add(new Runnable() {
+	    public void run() {
+		if (cuedTrack != null && cuedTrack != playingTrack) {
+		    updateStatus(cuedTrack, SoundTrack.READY_STATUS);
+		}
+		cuedTrack = track;
+		if (track != null && track != playingTrack) {
+		    updateStatus(track, SoundTrack.CUED_STATUS);
+		}
+	    }
+	});
     }
 
     /**
-     * Handle play signal.
+     * Handle play request, starting the cued track.
      */
     public void play() {
-	// TODO Auto-generated method stub
+	requests.add(new Runnable() {
+	    public void run() {
+		if (cuedTrack == null || cuedTrack == playingTrack) {
+		    return;
+		}
+		if (playingTrack != null) {
+		    updateStatus(playingTrack, SoundTrack.READY_STATUS);
+		}
+		playingTrack = cuedTrack;
+		updateStatus(playingTrack, SoundTrack.PLAYING_STATUS);
 
-	// Emit signal indicating start
-	playingSignal.emit();
+		// Inform listeners of the start
+		final PlayerListener[] current = listeners;
+		for (int i = 0; i < current.length; i++) {
+		    current[i].playbackStarted();
+		}
+	    }
+	});
     }
 
     /**
-     * Handle stop signal
+     * Handle stop request, stopping the playing track.
      */
     public void stop() {
-	// TODO Auto-generated method stub
+	requests.add(new Runnable() {
+	    public void run() {
+		if (playingTrack == null) {
+		    return;
+		}
+		updateStatus(playingTrack, SoundTrack.READY_STATUS);
+		playingTrack = null;
 
-	// Emit signal indicating stoppage
-	stoppedSignal.emit();
+		// Inform listeners of the stoppage
+		final PlayerListener[] current = listeners;
+		for (int i = 0; i < current.length; i++) {
+		    current[i].playbackStopped();
+		}
+	    }
+	});
+    }
+
+    /**
+     * Set the status of a track to one of the SoundTrack status values.
+     * 
+     * @param track
+     *                The track to update.
+     * @param status
+     *                The status to set.
+     */
+    private static void updateStatus(final SoundTrack track, final int status) {
+	try {
+	    track.setStatus(status);
+	} catch (OperationFailedException OFE) {
+	    // Shouldn't happen as only the SoundTrack values are used
+	    OFE.printStackTrace(System.err);
+	}
     }
 }
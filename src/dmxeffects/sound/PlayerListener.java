@@ -0,0 +1,39 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.sound;
+
+/**
+ * Interface for objects wishing to be informed of the playback state of a
+ * Player. Methods are called on the Player's thread.
+ * 
+ * @author chris
+ */
+public interface PlayerListener {
+
+    /**
+     * Handle playback starting.
+     */
+    void playbackStarted();
+
+    /**
+     * Handle playback stopping.
+     */
+    void playbackStopped();
+}
@@ -0,0 +1,300 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.sound;
+
+import dmxeffects.dmx.AssociationListener;
+import dmxeffects.dmx.ChannelHandler;
+import dmxeffects.dmx.ControlChannel;
+import dmxeffects.dmx.ControlListener;
+import dmxeffects.dmx.InvalidChannelNumberException;
+import dmxeffects.dmx.InvalidChannelValueException;
+import dmxeffects.dmx.Universe;
+
+/**
+ * Sound engine, holding the tracks of the show and acting upon the DMX
+ * channels associated with the sound module. It has no dependency upon Qt, so
+ * runs equally beneath the SoundModule GUI or without one.
+ * 
+ * @author chris
+ */
+public class SoundEngine implements ChannelHandler, AssociationListener {
+
+    /**
+     * Number of DMX channels used to control the engine.
+     */
+    public static final int CHANNELS_REQUIRED = 2;
+
+    /**
+     * Name of the module, used in the associations.
+     */
+    public static final String MODULE_NAME = "Sound Module";
+
+    private transient volatile int firstChannel = -1;
+
+    private transient Universe universe = null;
+
+    // -- Data storage for the tracks -- //
+    private final transient SoundTrack[] trackArray = new SoundTrack[256];
+
+    private final transient ControlChannel[] controls = new ControlChannel[CHANNELS_REQUIRED];
+
+    private final transient Player soundPlayer = new Player();
+
+    /**
+     * Create new SoundEngine.
+     */
+    public SoundEngine() {
+	super();
+
+	// Initialise controls
+	// Control Channel 1 is used for queing tracks
+	controls[0] = new ControlChannel(1, MODULE_NAME);
+	final ControlListener trackCue = new ControlListener() {
+	    public void controlTriggered(final int channelValue) {
+		cueTrack(channelValue);
+	    }
+	};
+	for (int i = 0; i < 256; i++) {
+	    try {
+		controls[0].setListener(i, trackCue);
+	    } catch (InvalidChannelValueException e) {
+		e.printStackTrace(System.err);
+	    }
+	}
+
+	// Control Channel 2 is used for play controls
+	controls[1] = new ControlChannel(2, MODULE_NAME);
+	// Ignore jitter of a fader held on a command
+	controls[1].setHysteresis(2);
+	try {
+	    controls[1].setListener(10, new ControlListener() {
+		public void controlTriggered(final int channelValue) {
+		    startPlayback();
+		}
+	    });
+	    controls[1].setListener(20, new ControlListener() {
+		public void controlTriggered(final int channelValue) {
+		    stopPlayback();
+		}
+	    });
+	} catch (InvalidChannelValueException e1) {
+	    e1.printStackTrace(System.err);
+	}
+    }
+
+    /**
+     * Start the player thread.
+     */
+    public void start() {
+	final Thread playerThread = new Thread(soundPlayer, "Sound Player");
+	playerThread.setDaemon(true);
+	playerThread.start();
+    }
+
+    /**
+     * Start acting upon the channels of a Universe associated with this
+     * engine, ceasing to act upon any previous Universe.
+     * 
+     * @param universe
+     *                The Universe to listen to.
+     */
+    public synchronized void attach(final Universe universe) {
+	if (this.universe != null) {
+	    this.universe.getRouter().unsubscribe(this);
+	    this.universe.removeAssociationListener(this);
+	}
+	this.universe = universe;
+	universe.addAssociationListener(this);
+	subscribe();
+    }
+
+    /**
+     * Route the channels associated with this engine to it, and no others.
+     */
+    private void subscribe() {
+	if (universe == null) {
+	    return;
+	}
+	universe.getRouter().unsubscribe(this);
+	if (firstChannel != -1) {
+	    try {
+		universe.getRouter().subscribe(firstChannel,
+			CHANNELS_REQUIRED, this);
+	    } catch (InvalidChannelNumberException ICNE) {
+		ICNE.printStackTrace(System.err);
+	    }
+	}
+    }
+
+    /**
+     * Provide the number of channels required for this engine.
+     * 
+     * @return The requisite number of channels.
+     */
+    public int getChannelsRequired() {
+	return CHANNELS_REQUIRED;
+    }
+
+    /**
+     * Get the first of the channels associated with this engine.
+     * 
+     * @return The first channel number, or -1 if there is no association.
+     */
+    public int getFirstChannel() {
+	return firstChannel;
+    }
+
+    /**
+     * Set the first of the channels associated with this engine.
+     * 
+     * @param firstChannel
+     *                The first channel number, or -1 for no association.
+     */
+    public synchronized void setFirstChannel(final int firstChannel) {
+	this.firstChannel = firstChannel;
+	subscribe();
+    }
+
+    /**
+     * Get the track cued by a DMX value.
+     * 
+     * @param val
+     *                The DMX value, from 0 to 255.
+     * @return The track, or null if there is none.
+     */
+    public SoundTrack getTrack(final int val) {
+	return trackArray[val];
+    }
+
+    /**
+     * Set the track cued by a DMX value.
+     * 
+     * @param val
+     *                The DMX value, from 0 to 255.
+     * @param track
+     *                The track, or null to remove it.
+     */
+    public void setTrack(final int val, final SoundTrack track) {
+	trackArray[val] = track;
+    }
+
+    /**
+     * Get the Player used by this engine.
+     * 
+     * @return The Player.
+     */
+    public Player getPlayer() {
+	return soundPlayer;
+    }
+
+    // -- Listener methods -- //
+
+    /**
+     * Handle a change to one of the channels associated with this engine,
+     * triggering its control.
+     * 
+     * @param universeNumber
+     *                The number of the Universe holding the channel.
+     * @param channelNumber
+     *                The channel number, from 1 to 512.
+     * @param channelValue
+     *                The new value of the channel, from 0 to 255.
+     */
+    public void onChannel(final int universeNumber, final int channelNumber,
+	    final int channelValue) {
+	final int control = channelNumber - firstChannel;
+	if ((control < 0) || (control >= CHANNELS_REQUIRED)) {
+	    // Routed before a change of association took effect
+	    return;
+	}
+	try {
+	    controls[control].trigger(channelValue);
+	} catch (InvalidChannelValueException ICVE) {
+	    // Should not occur
+	    ICVE.printStackTrace(System.err);
+	}
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see dmxeffects.dmx.AssociationListener#associationChanged(int, int,
+     *      java.lang.String)
+     */
+    public void associationChanged(final int firstChannel, final int count,
+	    final String association) {
+	if (MODULE_NAME.equals(association) && (count >= CHANNELS_REQUIRED)) {
+	    // Channels assigned to this engine
+	    setFirstChannel(firstChannel);
+	}
+    }
+
+    /**
+     * Handle channel association removal signals sent by Universe. If any of
+     * the channels of this engine are revoked it stops acting upon all of
+     * them, ready for re-assignment.
+     * 
+     * @param firstChannel
+     *                The first of the channels being revoked.
+     * @param count
+     *                The range of channels being revoked.
+     */
+    public void associationsRemoved(final int firstChannel, final int count) {
+	final int current = this.firstChannel;
+	if ((current != -1) && (firstChannel < current + CHANNELS_REQUIRED)
+		&& (firstChannel + count > current)) {
+	    setFirstChannel(-1);
+	}
+    }
+
+    // -- Action handlers -- //
+
+    /**
+     * Cue a track for playback
+     * 
+     * @param val
+     *                DMX Value of the track to be cued.
+     */
+    public void cueTrack(final int val) {
+	// TODO Validity checking
+	try {
+	    soundPlayer.cueTrack(trackArray[val]);
+	} catch (ArrayIndexOutOfBoundsException AOB) {
+	    // Shouldn't happen as val will have been verified
+	    AOB.printStackTrace(System.err);
+	}
+    }
+
+    /**
+     * Start playback.
+     */
+    public void startPlayback() {
+	// TODO Validity checking
+	soundPlayer.play();
+    }
+
+    /**
+     * Stop playback
+     */
+    public void stopPlayback() {
+	// TODO Validity checking
+	soundPlayer.stop();
+    }
+}
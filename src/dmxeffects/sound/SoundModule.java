@@ -26,44 +26,17 @@ import com.trolltech.qt.gui.QWidget;
 
 import dmxeffects.Main;
 import dmxeffects.Module;
-import dmxeffects.dmx.ControlChannel;
-import dmxeffects.dmx.InvalidChannelValueException;
 
 /**
- * Sound module main file. Provides all interfaces from external classes to the
- * functionality provided by this module.
+ * Sound module main file. Provides the GUI for the SoundEngine, which carries
+ * out the functionality provided by this module.
  * 
  * @author chris
  * 
  */
 public class SoundModule extends QObject implements Module {
 
-    // -- Module configuration information -- //
-    private static final int CHANNELS_REQUIRED = 2;
-
-    private static final String MODULE_NAME = "Sound Module";
-
-    private transient int firstChannel;
-
-    // -- Data storage for the tracks -- //
-    private final transient SoundTrack[] trackArray;
-
-    private final transient ControlChannel[] controls = new ControlChannel[CHANNELS_REQUIRED];
-
-    // -- Signals -- //
-    public transient Signal1<Integer> trackCueSignal;
-
-    public transient Signal1<Integer> playSignal;
-
-    public transient Signal1<Integer> stopSignal;
-
-    public transient Signal1<SoundTrack> playerCueSignal;
-
-    public transient Signal0 playerPlaySignal;
-
-    public transient Signal0 playerStopSignal;
-
-    private final transient Player soundPlayer;
+    private final transient SoundEngine engine;
 
     // -- GUI Elements -- //
     private transient QMenu soundMenu;
@@ -87,48 +60,9 @@ public class SoundModule extends QObject implements Module {
     public SoundModule() {
 	super();
 
-	// Initialise data storage
-	firstChannel = -1;
-	trackArray = new SoundTrack[256];
-
-	playerCueSignal = new Signal1<SoundTrack>();
-	playerPlaySignal = new Signal0();
-	playerStopSignal = new Signal0();
-
-	// Start player thread
-	soundPlayer = new Player();
-	playerCueSignal.connect(soundPlayer, "cueTrack(SoundTrack)");
-	playerPlaySignal.connect(soundPlayer, "play()");
-	playerStopSignal.connect(soundPlayer, "stop()");
-	final Thread playerThread = new Thread(soundPlayer);
-	soundPlayer.moveToThread(playerThread);
-	playerThread.start();
-
-	// Initialise controls
-	// Control Channel 1 is used for queing tracks
-	controls[0] = new ControlChannel(1, MODULE_NAME);
-	trackCueSignal = new Signal1<Integer>();
-	trackCueSignal.connect(this, "cueTrack(Integer)");
-	for (int i = 0; i < 256; i++) {
-	    try {
-		controls[0].setSignal(i, trackCueSignal);
-	    } catch (InvalidChannelValueException e) {
-		e.printStackTrace(System.err);
-	    }
-	}
-
-	// Control Channel 2 is used for play controls
-	controls[1] = new ControlChannel(2, MODULE_NAME);
-	playSignal = new Signal1<Integer>();
-	playSignal.connect(this, "startPlayback(Integer)");
-	stopSignal = new Signal1<Integer>();
-	stopSignal.connect(this, "stopPlayback(Integer)");
-	try {
-	    controls[1].setSignal(10, playSignal);
-	    controls[1].setSignal(20, stopSignal);
-	} catch (InvalidChannelValueException e1) {
-	    e1.printStackTrace(System.err);
-	}
+	// Start the engine
+	engine = new SoundEngine();
+	engine.start();
 
 	// Initialise GUI
 	try {
@@ -204,7 +138,7 @@ public class SoundModule extends QObject implements Module {
      * @see dmxeffects.Module#getName()
      */
     public String getName() {
-	return MODULE_NAME;
+	return SoundEngine.MODULE_NAME;
     }
 
     /*
@@ -235,7 +169,16 @@ public class SoundModule extends QObject implements Module {
      * @return The requisite number of channels.
      */
     public int getChannelsRequired() {
-	return CHANNELS_REQUIRED;
+	return engine.getChannelsRequired();
+    }
+
+    /**
+     * Get the engine behind this module.
+     * 
+     * @return The SoundEngine.
+     */
+    public SoundEngine getEngine() {
+	return engine;
     }
 
     // -- Action handlers -- //
@@ -245,13 +188,8 @@ public class SoundModule extends QObject implements Module {
 	// input
 	setAssoc();
 
-	// Start listening for input
-	Main.getInstance().getDMX().getUniverse().dmxValueUpdater.connect(this,
-		"dmxInput(Integer, Integer)");
-
-	// Listen for channel assignments being revoked
-	Main.getInstance().getDMX().getUniverse().assocRemUpdater.connect(this,
-		"assocUpdate(Integer, Integer)");
+	// Start listening for input and for channel assignments being revoked
+	engine.attach(Main.getInstance().getDMX().getUniverse());
 
 	// Allow associations to be changed if in program mode
 	if (Main.getInstance().getProgramMode()) {
@@ -260,55 +198,6 @@ public class SoundModule extends QObject implements Module {
 
     }
 
-    /**
-     * Handle DMX Input signals sent by the Universe. All input is assumed
-     * to have been validated due to the signal being sent by the Universe
-     * class.
-     * 
-     * @param channelNumber
-     *                Number of the channel for which input has been
-     *                receieved
-     * @param channelValue
-     *                Value this channel now holds.
-     */
-    public void dmxInput(final Integer channelNumber, final Integer channelValue) {
-	// Will confirm the channelNumber is one we're listening to, and then
-	// check if the channelValue is appropriate to perform an action.
-	final int chanNum = channelNumber.intValue();
-	if ((firstChannel != -1) && (chanNum >= firstChannel)
-		&& (chanNum < firstChannel + CHANNELS_REQUIRED)) {
-	    final int chanVal = channelValue.intValue();
-	    try {
-		controls[chanNum].trigger(chanVal);
-	    } catch (ArrayIndexOutOfBoundsException AOB) {
-		// No controls on this channel
-	    } catch (NullPointerException NPE) {
-		// No controls on this channel
-	    } catch (InvalidChannelValueException ICVE) {
-		// Should not occur
-		ICVE.printStackTrace(System.err);
-	    }
-	}
-
-    }
-
-    /**
-     * Handle channel association removal signals sent by Universe. This
-     * allows the module to remove its own if appropriate.
-     * 
-     * @param firstChannel
-     *                The first of the channels being revoked.
-     * @param range
-     *                The range of channels being revoked.
-     */
-    public void assocUpdate(final Integer firstChannel, final Integer range) {
-	// TODO Auto-generated method stub
-	/*
-	 * Check if there is any overlap, if there is remove any of the channels
-	 * that this module has assigned to it and prepare for re-assignment.
-	 */
-    }
-
     public void programMode() {
 	// Enable actions that are only available in program mode
 	try {
@@ -384,42 +273,4 @@ public class SoundModule extends QObject implements Module {
     public void clearTracks() {
 	// TODO Auto-generated method stub
     }
-
-    /**
-     * Cue a track for playback
-     * 
-     * @param val
-     *                DMX Value of the track to be cued.
-     */
-    public void cueTrack(final Integer val) {
-	// TODO Validity checking
-	try {
-	    playerCueSignal.emit(trackArray[val.intValue()]);
-	} catch (ArrayIndexOutOfBoundsException AOB) {
-	    // Shouldn't happen as val will have been verified
-	    AOB.printStackTrace(System.err);
-	}
-    }
-
-    /**
-     * Start playback.
-     * 
-     * @param val
-     *                Not used.
-     */
-    public void startPlayback(final Integer val) {
-	// TODO Validity checking
-	playerPlaySignal.emit();
-    }
-
-    /**
-     * Stop playback
-     * 
-     * @param val
-     *                Not used.
-     */
-    public void stopPlayback(final Integer val) {
-	// TODO Validity checking
-	playerStopSignal.emit();
-    }
 }
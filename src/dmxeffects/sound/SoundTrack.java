@@ -21,8 +21,6 @@ package dmxeffects.sound;
 
 import java.io.File;
 
-import com.trolltech.qt.core.QObject;
-
 import dmxeffects.OperationFailedException;
 
 /**
@@ -30,7 +28,7 @@ import dmxeffects.OperationFailedException;
  * 
  * @author chris
  */
-public class SoundTrack extends QObject {
+public class SoundTrack {
 
     private final transient File trackFile;
 
@@ -38,7 +36,8 @@ public class SoundTrack extends QObject {
 
     private transient int trackStatus;
 
-    public transient Signal0 dataUpdated = new Signal0();
+    // Replaced, never modified, when a listener is added or removed
+    private transient volatile TrackListener[] listeners = new TrackListener[0];
 
     /**
      * Value used to indicate that the track has a "ready" status.
@@ -128,7 +127,7 @@ public class SoundTrack extends QObject {
 	    throw new OperationFailedException("No title was provided.");
 	} else {
 	    this.trackTitle = trackTitle;
-	    dataUpdated.emit();
+	    fireTrackUpdated();
 	}
     }
 
@@ -154,6 +153,47 @@ public class SoundTrack extends QObject {
 		    + " is not valid.");
 	}
 	this.trackStatus = trackStatus;
-	dataUpdated.emit();
+	fireTrackUpdated();
+    }
+
+    /**
+     * Register a listener to be informed of changes to this soundTrack.
+     * 
+     * @param listener
+     *                The listener to add.
+     */
+    public synchronized void addTrackListener(final TrackListener listener) {
+	final TrackListener[] current = listeners;
+	final TrackListener[] replacement = new TrackListener[current.length + 1];
+	System.arraycopy(current, 0, replacement, 0, current.length);
+	replacement[current.length] = listener;
+	listeners = replacement;
+    }
+
+    /**
+     * Stop informing a listener of changes to this soundTrack.
+     * 
+     * @param listener
+     *                The listener to remove.
+     */
+    public synchronized void removeTrackListener(final TrackListener listener) {
+	final TrackListener[] current = listeners;
+	for (int i = 0; i < current.length; i++) {
+	    if (current[i] == listener) {
+		final TrackListener[] replacement = new TrackListener[current.length - 1];
+		System.arraycopy(current, 0, replacement, 0, i);
+		System.arraycopy(current, i + 1, replacement, i,
+			current.length - i - 1);
+		listeners = replacement;
+		return;
+	    }
+	}
+    }
+
+    private void fireTrackUpdated() {
+	final TrackListener[] current = listeners;
+	for (int i = 0; i < current.length; i++) {
+	    current[i].trackUpdated(this);
+	}
     }
 }
@@ -0,0 +1,36 @@
+/*
+ * $Id$
+ * 
+ * Copyright (C) 2007 Christopher Hawley
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package dmxeffects.sound;
+
+/**
+ * Interface for objects wishing to be informed of changes to a SoundTrack.
+ * 
+ * @author chris
+ */
+public interface TrackListener {
+
+    /**
+     * Handle a change to the title or status of a track.
+     * 
+     * @param track
+     *                The track which has changed.
+     */
+    void trackUpdated(SoundTrack track);
+}